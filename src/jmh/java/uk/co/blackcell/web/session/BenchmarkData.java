@@ -0,0 +1,36 @@
+/**
+ * This is the benchmark data generator. Session payloads resemble the JSON documents stored
+ * by applications, so compression behaves as it would in production.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+final class BenchmarkData
+{
+    private BenchmarkData() {
+        super();
+    }
+
+    static String json(final int size) {
+        Random random = new Random(size);
+
+        StringBuilder json = new StringBuilder("{\"items\":[");
+        while(json.length() < size) {
+            json.append("{\"id\":").append(random.nextInt(100000))
+                .append(",\"name\":\"item-").append(Long.toHexString(random.nextLong()))
+                .append("\",\"quantity\":").append(random.nextInt(10)).append("},");
+        }
+        json.setLength(size - 2);
+
+        return json.append("]}").toString();
+    }
+
+    static byte[] jsonBytes(final int size) {
+        return json(size).getBytes(StandardCharsets.UTF_8);
+    }
+}
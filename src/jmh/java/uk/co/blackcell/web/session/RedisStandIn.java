@@ -0,0 +1,240 @@
+/**
+ * This is an in-process Redis stand-in, used by the benchmarks so that round trips can be
+ * measured without an external server. It speaks just enough of the RESP protocol to serve
+ * the commands issued by the session facades, keeps data in memory and ignores expiry, so
+ * results reflect the client path (pooling, pipelining, encoding) plus loopback networking.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+final class RedisStandIn implements Closeable
+{
+    private static final byte[] CRLF = { '\r', '\n' };
+
+    private final ConcurrentMap<String, byte[]> data = new ConcurrentHashMap<>();
+
+    private final ServerSocket server;
+
+    private volatile boolean running = true;
+
+    RedisStandIn() throws IOException {
+        server = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+
+        Thread acceptor = new Thread(this::accept, "redis-stand-in");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    int getPort() {
+        return server.getLocalPort();
+    }
+
+    public void close() throws IOException {
+        running = false;
+        server.close();
+    }
+
+    private void accept() {
+        while(running) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+
+                Thread connection = new Thread(() -> serve(socket), "redis-stand-in-connection");
+                connection.setDaemon(true);
+                connection.start();
+
+            } catch(IOException ex) {
+                // The server socket was closed.
+            }
+        }
+    }
+
+    private void serve(final Socket socket) {
+        try (Socket client = socket) {
+            InputStream in = new BufferedInputStream(client.getInputStream());
+            OutputStream out = new BufferedOutputStream(client.getOutputStream());
+
+            while(running) {
+                List<byte[]> command = readCommand(in);
+                if(!execute(command, out)) {
+                    break;
+                }
+
+                // Pipelined commands are answered together, once no more are waiting.
+                if(in.available() == 0) {
+                    out.flush();
+                }
+            }
+            out.flush();
+
+        } catch(IOException ex) {
+            // The client disconnected.
+        }
+    }
+
+    private boolean execute(final List<byte[]> command, final OutputStream out) throws IOException {
+        String name = new String(command.get(0), StandardCharsets.US_ASCII).toUpperCase(Locale.ROOT);
+
+        switch(name) {
+            case "PING":
+                writeStatus(out, "PONG");
+                return true;
+
+            case "AUTH":
+            case "SELECT":
+                writeStatus(out, "OK");
+                return true;
+
+            case "QUIT":
+                writeStatus(out, "OK");
+                return false;
+
+            case "GET":
+                writeBulk(out, data.get(key(command.get(1))));
+                return true;
+
+            case "MGET":
+                writeArrayHeader(out, command.size() - 1);
+                for(int index = 1; index < command.size(); index++) {
+                    writeBulk(out, data.get(key(command.get(index))));
+                }
+                return true;
+
+            case "SET":
+                data.put(key(command.get(1)), command.get(2));
+                writeStatus(out, "OK");
+                return true;
+
+            case "SETEX":
+                data.put(key(command.get(1)), command.get(3));
+                writeStatus(out, "OK");
+                return true;
+
+            case "EXPIRE":
+                writeInteger(out, data.containsKey(key(command.get(1))) ? 1 : 0);
+                return true;
+
+            case "DEL":
+                long removed = 0;
+                for(int index = 1; index < command.size(); index++) {
+                    if(data.remove(key(command.get(index))) != null) {
+                        removed++;
+                    }
+                }
+                writeInteger(out, removed);
+                return true;
+
+            case "PUBLISH":
+                writeInteger(out, 0);
+                return true;
+
+            default:
+                writeError(out, "ERR unknown command '" + name + "'");
+                return true;
+        }
+    }
+
+    private static String key(final byte[] key) {
+        return new String(key, StandardCharsets.ISO_8859_1);
+    }
+
+    private static List<byte[]> readCommand(final InputStream in) throws IOException {
+        String header = readLine(in);
+        if(header.isEmpty() || header.charAt(0) != '*') {
+            throw new IOException("Unsupported request: " + header);
+        }
+
+        int count = Integer.parseInt(header.substring(1));
+        List<byte[]> arguments = new ArrayList<>(count);
+
+        for(int index = 0; index < count; index++) {
+            int length = Integer.parseInt(readLine(in).substring(1));
+
+            byte[] argument = new byte[length];
+            int read = 0;
+            while(read < length) {
+                int chunk = in.read(argument, read, length - read);
+                if(chunk < 0) {
+                    throw new EOFException();
+                }
+                read += chunk;
+            }
+            readLine(in);
+
+            arguments.add(argument);
+        }
+        return arguments;
+    }
+
+    private static String readLine(final InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+
+        int value;
+        while((value = in.read()) != '\r') {
+            if(value < 0) {
+                throw new EOFException();
+            }
+            line.append((char)value);
+        }
+        in.read();
+
+        return line.toString();
+    }
+
+    private static void writeStatus(final OutputStream out, final String status) throws IOException {
+        out.write('+');
+        out.write(status.getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+    }
+
+    private static void writeError(final OutputStream out, final String error) throws IOException {
+        out.write('-');
+        out.write(error.getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+    }
+
+    private static void writeInteger(final OutputStream out, final long value) throws IOException {
+        out.write(':');
+        out.write(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+    }
+
+    private static void writeArrayHeader(final OutputStream out, final int size) throws IOException {
+        out.write('*');
+        out.write(Integer.toString(size).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+    }
+
+    private static void writeBulk(final OutputStream out, final byte[] value) throws IOException {
+        if(value == null) {
+            out.write("$-1".getBytes(StandardCharsets.US_ASCII));
+            out.write(CRLF);
+            return;
+        }
+        out.write('$');
+        out.write(Integer.toString(value.length).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+        out.write(value);
+        out.write(CRLF);
+    }
+}
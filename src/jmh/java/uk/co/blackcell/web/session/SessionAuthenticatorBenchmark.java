@@ -0,0 +1,47 @@
+/**
+ * This is the session authenticator benchmark, which measures loading the private key from
+ * the key store and decrypting the Redis credential, as performed on first use of a key store.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionAuthenticatorBenchmark
+{
+    // Relative to the directory the benchmarks are run from (the project root).
+    @Param({"keys"})
+    private String keyPath;
+
+    @Benchmark
+    public SessionAuthenticator loadKey() {
+        return new SessionAuthenticator(keyPath);
+    }
+
+    @Benchmark
+    public String loadKeyAndAuthenticate() throws Exception {
+        SessionAuthenticator authenticator = new SessionAuthenticator(keyPath);
+        authenticator.authenticate();
+
+        return authenticator.getAuthenticationKey();
+    }
+}
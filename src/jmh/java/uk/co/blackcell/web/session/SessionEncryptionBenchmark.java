@@ -0,0 +1,59 @@
+/**
+ * This is the session encryption benchmark, which measures the encoding (compression and
+ * encryption) and decoding of session data by the encrypted facade, across payload sizes.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionEncryptionBenchmark
+{
+    @Param({"256", "4096", "65536"})
+    private int payloadSize;
+
+    private AbstractSessionFacade facade;
+
+    private byte[] data;
+    private byte[] stored;
+
+    @Setup
+    public void setUp() throws Exception {
+        // No connection is made until the pool is first used.
+        facade = new RedisSessionManagerEncryptedImpl(new RedisPooledStore(Optional.empty()));
+
+        data = BenchmarkData.jsonBytes(payloadSize);
+        stored = facade.encode(data);
+    }
+
+    @Benchmark
+    public byte[] encode() throws Exception {
+        return facade.encode(data);
+    }
+
+    @Benchmark
+    public byte[] decode() throws Exception {
+        return facade.decode(stored);
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * This is the session round trip benchmark, which measures SessionManager save and find
+ * against an in-process Redis stand-in, at several thread counts, so that pool contention
+ * shows up alongside the cost of each round trip.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionRoundTripBenchmark
+{
+    private static final String EXTERNAL_SESSION_CONFIG     = "session.config.file";
+
+    @State(Scope.Benchmark)
+    public static class Server
+    {
+        @Param({"1024", "16384"})
+        private int payloadSize;
+
+        private RedisStandIn redis;
+
+        private File config;
+
+        private SessionManager manager;
+
+        private String data;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            redis = new RedisStandIn();
+
+            // The packaged configuration is used, pointed at the stand-in instead.
+            Properties properties = new Properties();
+            try (InputStream in = getClass().getClassLoader().getResourceAsStream("session.properties")) {
+                properties.load(in);
+            }
+            properties.setProperty("redis.server.host", "127.0.0.1");
+            properties.setProperty("redis.server.port", Integer.toString(redis.getPort()));
+            properties.setProperty("redis.sentinel.enabled", "false");
+
+            config = File.createTempFile("session", ".properties");
+            try (OutputStream out = new FileOutputStream(config)) {
+                properties.store(out, null);
+            }
+            System.setProperty(EXTERNAL_SESSION_CONFIG, config.getAbsolutePath());
+
+            manager = new SessionManager();
+            data = BenchmarkData.json(payloadSize);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            redis.close();
+            config.delete();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Session
+    {
+        private String sessionID;
+
+        @Setup(Level.Trial)
+        public void setUp(final Server server) throws Exception {
+            sessionID = SessionManager.generateID();
+            server.manager.save(sessionID, server.data);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String saveAndFindOneThread(final Server server, final Session session) throws Exception {
+        return saveAndFind(server, session);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String saveAndFindFourThreads(final Server server, final Session session) throws Exception {
+        return saveAndFind(server, session);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public String saveAndFindSixteenThreads(final Server server, final Session session) throws Exception {
+        return saveAndFind(server, session);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public String findSixteenThreads(final Server server, final Session session) throws Exception {
+        return server.manager.find(session.sessionID);
+    }
+
+    private static String saveAndFind(final Server server, final Session session) throws Exception {
+        server.manager.save(session.sessionID, server.data);
+        return server.manager.find(session.sessionID);
+    }
+}
@@ -0,0 +1,223 @@
+/**
+ * This is the abstract Redis session store, holding what the single-master and cluster stores
+ * have in common: connection pool settings, the session timeout and change announcements.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.util.Pool;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+abstract class AbstractRedisStore implements SessionStore
+{
+    private static final Logger logger = LoggerFactory.getLogger(AbstractRedisStore.class);
+
+    // The session identifier is a hash tag, so both keys of a session share a cluster slot.
+    private static final String ATTRIBUTES_KEY_FORMAT       = "{%s}:attributes";
+
+    private static final long SHUTDOWN_POLL_MILLIS          = 10;
+
+    // Few sessions have attributes, so their key is only given a new timeout when it exists.
+    private static final String TOUCH_ATTRIBUTES =
+            "local function touchAttributes(key, timeout) "
+          + "  if redis.call('EXISTS', key) == 1 then "
+          + "    return redis.call('EXPIRE', key, timeout) "
+          + "  end "
+          + "  return 0 "
+          + "end ";
+
+    // A plain write over a versioned value (see SessionEnvelope) keeps it versioned, at the next
+    // version, so a compare-and-set against a version read before the write still conflicts.
+    private static final String KEEP_VERSION =
+            "local function keepVersion(key, value) "
+          + "  local header = redis.call('GETRANGE', key, 0, 9) "
+          + "  if #header < 10 or string.byte(header, 1) ~= 255 or bit.band(string.byte(header, 2), 4) == 0 then "
+          + "    return value "
+          + "  end "
+          + "  local version = { string.byte(header, 3, 10) } "
+          + "  local index = 8 "
+          + "  repeat "
+          + "    version[index] = (version[index] + 1) % 256 "
+          + "    index = index - 1 "
+          + "  until version[index + 1] ~= 0 or index == 0 "
+          + "  local flags, payload = 0, value "
+          + "  if #value >= 2 and string.byte(value, 1) == 255 then "
+          + "    flags, payload = string.byte(value, 2), string.sub(value, 3) "
+          + "  end "
+          + "  return string.char(255, bit.bor(flags, 4)) .. string.char(unpack(version)) .. payload "
+          + "end ";
+
+    // Scripts take the key of each session first, followed by their attribute keys in the same order.
+    static final RedisScript READ_AND_TOUCH = new RedisScript(TOUCH_ATTRIBUTES
+          + "local data = redis.call('GET', KEYS[1]) "
+          + "redis.call('EXPIRE', KEYS[1], ARGV[1]) "
+          + "touchAttributes(KEYS[2], ARGV[1]) "
+          + "return data");
+
+    static final RedisScript READ_ALL_AND_TOUCH = new RedisScript(TOUCH_ATTRIBUTES
+          + "local count = #KEYS / 2 "
+          + "local data = {} "
+          + "for index = 1, count do "
+          + "  data[index] = redis.call('GET', KEYS[index]) "
+          + "  if ARGV[index + 1] == '1' then "
+          + "    redis.call('EXPIRE', KEYS[index], ARGV[1]) "
+          + "    touchAttributes(KEYS[count + index], ARGV[1]) "
+          + "  end "
+          + "end "
+          + "return data");
+
+    // Changes are announced by the script, when given a channel and message after the data.
+    static final RedisScript WRITE_ALL_WITH_TIMEOUT = new RedisScript(TOUCH_ATTRIBUTES + KEEP_VERSION
+          + "local count = #KEYS / 2 "
+          + "for index = 1, count do "
+          + "  redis.call('SETEX', KEYS[index], ARGV[1], keepVersion(KEYS[index], ARGV[index + 1])) "
+          + "  touchAttributes(KEYS[count + index], ARGV[1]) "
+          + "end "
+          + "if ARGV[count + 2] then "
+          + "  redis.call('PUBLISH', ARGV[count + 2], ARGV[count + 3]) "
+          + "end "
+          + "return count");
+
+    // The result is that of the data alone: a caller skipping an unchanged write must not take
+    // attributes, left behind once the data has expired, for the session still being stored.
+    static final RedisScript EXPIRE_ALL = new RedisScript(TOUCH_ATTRIBUTES
+          + "local count = #KEYS / 2 "
+          + "local result = {} "
+          + "for index = 1, count do "
+          + "  result[index] = redis.call('EXPIRE', KEYS[index], ARGV[1]) "
+          + "  touchAttributes(KEYS[count + index], ARGV[1]) "
+          + "end "
+          + "return result");
+
+    // The version sits in the envelope header of the stored value (see SessionEnvelope), and is
+    // zero when there is no value or it is unversioned. Changes are only announced when written.
+    static final RedisScript WRITE_IF_VERSION = new RedisScript(TOUCH_ATTRIBUTES
+          + "local stored = redis.call('GET', KEYS[1]) "
+          + "local version = string.rep('\\0', 8) "
+          + "if stored and #stored >= 10 and string.byte(stored, 1) == 255 and bit.band(string.byte(stored, 2), 4) ~= 0 then "
+          + "  version = string.sub(stored, 3, 10) "
+          + "end "
+          + "if version ~= ARGV[2] then "
+          + "  return 'CONFLICT' "
+          + "end "
+          + "redis.call('SETEX', KEYS[1], ARGV[1], ARGV[3]) "
+          + "touchAttributes(KEYS[2], ARGV[1]) "
+          + "if ARGV[4] then "
+          + "  redis.call('PUBLISH', ARGV[4], ARGV[5]) "
+          + "end "
+          + "return 'OK'");
+
+    static final byte[] TOUCH                               = SafeEncoder.encode("1");
+    static final byte[] NO_TOUCH                            = SafeEncoder.encode("0");
+
+    static final SessionMetrics metrics = SessionMetrics.getInstance();
+
+    final SessionConfig config = SessionConfig.getInstance();
+
+    static GenericObjectPoolConfig createPoolConfig(SessionConfig config) {
+        GenericObjectPoolConfig poolConfig = new GenericObjectPoolConfig();
+
+        poolConfig.setMaxTotal(config.getPoolMaxTotal());
+        poolConfig.setMaxIdle(config.getPoolMaxIdle());
+        poolConfig.setMinIdle(config.getPoolMinIdle());
+        poolConfig.setMaxWaitMillis(config.getPoolMaxWaitInMillis());
+        poolConfig.setBlockWhenExhausted(true);
+
+        poolConfig.setTestOnBorrow(config.isPoolTestOnBorrow());
+        poolConfig.setTestWhileIdle(config.isPoolTestWhileIdle());
+        poolConfig.setTimeBetweenEvictionRunsMillis(config.getPoolEvictionIntervalInMillis());
+        poolConfig.setMinEvictableIdleTimeMillis(config.getPoolEvictableIdleInMillis());
+        poolConfig.setNumTestsPerEvictionRun(-1);
+
+        logger.info("Redis pool: maxTotal={}, maxIdle={}, minIdle={}, maxWaitMillis={}, testOnBorrow={}, testWhileIdle={}, "
+                + "evictionIntervalMillis={}, evictableIdleMillis={}, connectionTimeoutMillis={}, socketTimeoutMillis={}",
+                new Object[] {
+                        poolConfig.getMaxTotal(), poolConfig.getMaxIdle(), poolConfig.getMinIdle(), poolConfig.getMaxWaitMillis(),
+                        poolConfig.getTestOnBorrow(), poolConfig.getTestWhileIdle(), poolConfig.getTimeBetweenEvictionRunsMillis(),
+                        poolConfig.getMinEvictableIdleTimeMillis(), config.getConnectionTimeoutInMillis(), config.getSocketTimeoutInMillis()
+                });
+
+        return poolConfig;
+    }
+
+    static void awaitReturned(final Collection<? extends Pool<?>> pools, final long deadlineNanos) {
+        for(Pool<?> pool : pools) {
+            while(pool.getNumActive() > 0 && deadlineNanos - System.nanoTime() > 0) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(SHUTDOWN_POLL_MILLIS);
+                } catch(InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+
+            if(pool.getNumActive() > 0) {
+                logger.warn("{} Redis connection(s) were still in use at shutdown...", pool.getNumActive());
+            }
+        }
+    }
+
+    static byte[] toAttributesKey(final byte[] key) {
+        return SafeEncoder.encode(String.format(ATTRIBUTES_KEY_FORMAT, SafeEncoder.encode(key)));
+    }
+
+    // The keys of every session, followed by their attribute keys, as the batch scripts expect.
+    static List<byte[]> withAttributesKeys(final byte[][] keys) {
+        List<byte[]> scriptKeys = new ArrayList<>(keys.length * 2);
+        scriptKeys.addAll(Arrays.asList(keys));
+        for(byte[] key : keys) {
+            scriptKeys.add(toAttributesKey(key));
+        }
+        return scriptKeys;
+    }
+
+    List<byte[]> toWriteIfVersionArgs(final byte[] key, final byte[] version, final byte[] data) {
+        List<byte[]> args = new ArrayList<>(5);
+        args.add(timeout());
+        args.add(version);
+        args.add(data);
+
+        if(isAnnouncing()) {
+            args.add(SafeEncoder.encode(getChannel()));
+            args.add(SafeEncoder.encode(SessionNearCache.toMessage(SafeEncoder.encode(key))));
+        }
+        return args;
+    }
+
+    int getTimeout() {
+        return config.getSessionTimeoutInSeconds();
+    }
+
+    byte[] timeout() {
+        return SafeEncoder.encode(Integer.toString(getTimeout()));
+    }
+
+    // When near-caching or dirty checking is in use, every change is announced so other nodes can
+    // evict what they hold of it.
+    boolean isAnnouncing() {
+        return config.isCacheEnabled() || config.isDirtyCheckEnabled();
+    }
+
+    String getChannel() {
+        return config.getCacheChannel();
+    }
+
+    static List<String> toSessionIDs(final byte[][] keys) {
+        List<String> sessionIDs = new ArrayList<>(keys.length);
+        for(byte[] key : keys) {
+            sessionIDs.add(SafeEncoder.encode(key));
+        }
+        return sessionIDs;
+    }
+}
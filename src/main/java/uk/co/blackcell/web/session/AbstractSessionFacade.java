@@ -1,116 +1,632 @@
 package uk.co.blackcell.web.session;
 
-import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import redis.clients.jedis.*;
-import redis.clients.util.Pool;
-import uk.co.blackcell.web.session.exceptions.SessionAuthenticationFailedException;
+import redis.clients.util.SafeEncoder;
+import uk.co.blackcell.web.session.exceptions.SessionConflictException;
+import uk.co.blackcell.web.session.exceptions.SessionNotFoundException;
+import uk.co.blackcell.web.session.exceptions.SessionNotPersistedException;
 import uk.co.blackcell.web.session.exceptions.SessionTechnicalException;
 
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
 
-abstract class AbstractSessionFacade
+import static uk.co.blackcell.web.session.constants.SessionConstants.*;
+
+abstract class AbstractSessionFacade implements ISessionFacade
 {
     protected static final String PING_RESPONSE_CODE          = "PONG";
 
     private static final Logger logger = LoggerFactory.getLogger(AbstractSessionFacade.class);
 
-    private static Pool pool;
+    protected static final SessionCompressor COMPRESSOR;
+
+    static {
+        SessionConfig config = SessionConfig.getInstance();
+
+        COMPRESSOR = new SessionCompressor(config.isCompressionEnabled(), config.getCompressionThreshold(),
+                config.getCompressionMaximum(), config.getCompressionLevel());
+    }
+
+    private static final SessionMetrics metrics = SessionMetrics.getInstance();
 
     private SessionConfig config = SessionConfig.getInstance();
 
-    private Optional<String> keyPath;
+    private final SessionStore store;
+
+    private SessionTimeoutRefresher refresher;
 
-    AbstractSessionFacade(Optional<String> keyPath) {
+    AbstractSessionFacade(final SessionStore store) {
         logger.debug("AbstractSessionFacade constructor.");
 
-        initialise(keyPath);
+        this.store = store;
+
+        initialise();
     }
 
-    private void initialise(Optional<String> keyPath) {
-        logger.debug("Perform abstract initialisation of connection pooling...");
+    private void initialise() {
+        logger.debug("Perform abstract initialisation of session refreshing...");
 
-        this.keyPath = keyPath;
+        refresher = SessionTimeoutRefresher.getInstance(this);
+    }
 
-        if(pool == null) {
-            logger.debug("Redis Sentinel enabled set to {}.", config.isSentinelEnabled());
+    SessionStore getStore() {
+        return store;
+    }
 
-            if (config.isSentinelEnabled()) {
-                GenericObjectPoolConfig poolConfig = new GenericObjectPoolConfig();
-                pool = new JedisSentinelPool(config.getMaster(), config.getSentinelList(), poolConfig);
+    // A sample is encoded and decoded, so the first request does not pay for codec set-up.
+    void warmUp() {
+        logger.debug("warmUp()...");
 
-                HostAndPort hostAndPort = ((JedisSentinelPool)pool).getCurrentHostMaster();
+        byte[] sample = new byte[config.getCompressionThreshold() + 1];
 
-                String host = hostAndPort.getHost();
-                int port = hostAndPort.getPort();
+        if(!Arrays.equals(sample, decodeOrFail(encodeOrFail(sample)))) {
+            throw new SessionTechnicalException("Session data could not be encoded and decoded");
+        }
+    }
 
-                logger.debug("Sentinel Master on Host:{}, Port:{}...", host, port);
+    abstract byte[] encode(final byte[] data) throws GeneralSecurityException;
 
-            } else {
-                JedisPoolConfig poolConfig = new JedisPoolConfig();
-                poolConfig.setMaxTotal(10000);
-                poolConfig.setMaxIdle(10);
-                poolConfig.setMinIdle(1);
-                poolConfig.setMaxWaitMillis(30000);
+    abstract byte[] decode(final byte[] stored) throws GeneralSecurityException, DataFormatException;
 
-                String host = config.getRedisServerHost();
-                int port = config.getRedisServerPort();
+    // Whether the stored value is already in the form (for example, under the key) it would now be written in.
+    boolean isCurrent(final byte[] stored) {
+        return true;
+    }
 
-                pool = new JedisPool(poolConfig, host, port, Protocol.DEFAULT_TIMEOUT, null);
+    public void ping(final String sessionID)
+        throws SessionTechnicalException {
+
+        logger.debug("ping({})...", sessionID);
+
+        boolean budgeted = beginBudget();
+
+        long start = System.nanoTime();
+        try {
+            String response = store.ping();
+
+            if(!(response.equalsIgnoreCase(PING_RESPONSE_CODE))) {
+                throw new SessionTechnicalException("Redis Server (returned): "+response);
             }
+
+        } catch(Exception ex) {
+            metrics.error(SessionMetrics.PING);
+            throw new SessionTechnicalException(ex);
+
+        } finally {
+            metrics.time(SessionMetrics.PING, start);
+            endBudget(budgeted);
         }
     }
 
-    Jedis getConnection() throws SessionAuthenticationFailedException {
-        logger.debug("Obtain connection from {}...", pool.getClass().getName());
-        Jedis resource = (Jedis)pool.getResource();
+    public String getData(final String sessionID) throws SessionNotFoundException {
+        return new String(getBytes(sessionID), StandardCharsets.UTF_8);
+    }
 
-        if (keyPath.isPresent() && !keyPath.get().isEmpty()) {
-            SessionAuthenticator session = new SessionAuthenticator(keyPath.get());
-            session.authenticate();
+    public void setData(final String sessionID, final String data) throws SessionNotPersistedException {
+        setBytes(sessionID, data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public byte[] getBytes(final String sessionID) throws SessionNotFoundException {
+        logger.debug("getBytes({})...", sessionID);
+
+        boolean budgeted = beginBudget();
+
+        long start = System.nanoTime();
+        try {
+            boolean refresh = refresher.isDue(sessionID);
+
+            Optional<byte[]> stored = store.readAndTouch(SafeEncoder.encode(sessionID), refresh);
+            if(refresh) {
+                refresher.refreshed(sessionID);
+            }
 
-            resource.auth(session.getAuthenticationKey());
+            if (!stored.isPresent() || stored.get().length == 0) {
+                logger.debug("No data could be retrieved from session: [{}]...", sessionID);
+                metrics.miss(1);
+                throw new SessionNotFoundException(SESSION_NOT_FOUND_ERROR);
+            }
+
+            metrics.size(SessionMetrics.PAYLOAD_READ, stored.get().length);
+            checkCurrent(sessionID, stored.get());
+
+            return decodeOrFail(stored.get());
+
+        } catch(RuntimeException ex) {
+            metrics.error(SessionMetrics.GET);
+            throw ex;
+
+        } finally {
+            metrics.time(SessionMetrics.GET, start);
+            endBudget(budgeted);
         }
+    }
 
-        return resource;
+    public void setBytes(final String sessionID, final byte[] data) throws SessionNotPersistedException {
+        logger.debug("setBytes({})...", sessionID);
+
+        boolean budgeted = beginBudget();
+
+        long start = System.nanoTime();
+        try {
+            byte[] encoded = encodeOrFail(data);
+            metrics.size(SessionMetrics.PAYLOAD_WRITTEN, encoded.length);
+
+            String response = store.writeWithTimeout(SafeEncoder.encode(sessionID), encoded);
+            logger.debug("Session response: [{}]", response);
+
+            refresher.refreshed(sessionID);
+
+            if(!SESSION_RESPONSE_CODE.equalsIgnoreCase(response)) {
+                logger.warn("Session response was not successful, warning raised...");
+                metrics.error(SessionMetrics.SET);
+                throw new SessionNotPersistedException(SESSION_FAILED_TO_PERSIST);
+            }
+
+        } catch(RuntimeException ex) {
+            logger.warn("Data could not be persisted to the current store: [{}]", sessionID);
+            metrics.error(SessionMetrics.SET);
+            throw ex;
+
+        } finally {
+            metrics.time(SessionMetrics.SET, start);
+            endBudget(budgeted);
+        }
     }
 
-    void ping(final String sessionID)
-        throws SessionTechnicalException {
+    public VersionedSession getVersionedBytes(final String sessionID) throws SessionNotFoundException {
+        logger.debug("getVersionedBytes({})...", sessionID);
 
-        logger.debug("ping({})...", sessionID);
+        boolean budgeted = beginBudget();
+
+        long start = System.nanoTime();
         try {
-            Jedis connection = getConnection();
+            // Touching keeps the read on the master, where the versioned write will be made.
+            Optional<byte[]> stored = store.readAndTouch(SafeEncoder.encode(sessionID), true);
+            refresher.refreshed(sessionID);
+
+            if (!stored.isPresent() || stored.get().length == 0) {
+                logger.debug("No data could be retrieved from session: [{}]...", sessionID);
+                metrics.miss(1);
+                throw new SessionNotFoundException(SESSION_NOT_FOUND_ERROR);
+            }
 
-            String response = connection.ping();
+            metrics.size(SessionMetrics.PAYLOAD_READ, stored.get().length);
+            checkCurrent(sessionID, stored.get());
 
-            connection.close();
+            return new VersionedSession(decodeOrFail(stored.get()), SessionEnvelope.getVersion(stored.get()));
 
-            if(!(response.equalsIgnoreCase(PING_RESPONSE_CODE))) {
-                throw new SessionTechnicalException("Redis Server (returned): "+response);
+        } catch(RuntimeException ex) {
+            metrics.error(SessionMetrics.GET_VERSIONED);
+            throw ex;
+
+        } finally {
+            metrics.time(SessionMetrics.GET_VERSIONED, start);
+            endBudget(budgeted);
+        }
+    }
+
+    public long setVersionedBytes(final String sessionID, final byte[] data, final long version) throws SessionNotPersistedException {
+        logger.debug("setVersionedBytes({}, {})...", sessionID, version);
+
+        boolean budgeted = beginBudget();
+
+        long start = System.nanoTime();
+        try {
+            byte[] encoded = SessionEnvelope.withVersion(encodeOrFail(data), version + 1);
+            metrics.size(SessionMetrics.PAYLOAD_WRITTEN, encoded.length);
+
+            String response = store.writeIfVersion(SafeEncoder.encode(sessionID), SessionEnvelope.toVersion(version), encoded);
+            logger.debug("Session response: [{}]", response);
+
+            if(SESSION_CONFLICT_CODE.equalsIgnoreCase(response)) {
+                logger.debug("Session [{}] was changed since version {} was read...", sessionID, version);
+                metrics.count(SessionMetrics.CONFLICTS, 1);
+                throw new SessionConflictException(SESSION_VERSION_CONFLICT);
             }
 
-        } catch(Exception ex) {
+            refresher.refreshed(sessionID);
+
+            if(!SESSION_RESPONSE_CODE.equalsIgnoreCase(response)) {
+                logger.warn("Session response was not successful, warning raised...");
+                metrics.error(SessionMetrics.SET_VERSIONED);
+                throw new SessionNotPersistedException(SESSION_FAILED_TO_PERSIST);
+            }
+            return version + 1;
+
+        } catch(RuntimeException ex) {
+            logger.warn("Data could not be persisted to the current store: [{}]", sessionID);
+            metrics.error(SessionMetrics.SET_VERSIONED);
+            throw ex;
+
+        } finally {
+            metrics.time(SessionMetrics.SET_VERSIONED, start);
+            endBudget(budgeted);
+        }
+    }
+
+    public void invalidate(final String sessionID) {
+        logger.debug("invalidate({})...", sessionID);
+        refresher.forget(sessionID);
+
+        boolean budgeted = beginBudget();
+
+        long start = System.nanoTime();
+        try {
+            long response = store.delete(Collections.singletonList(sessionID));
+            logger.debug("response: ({})...", response);
+
+        } catch(RuntimeException ex) {
+            metrics.error(SessionMetrics.INVALIDATE);
+            throw ex;
+
+        } finally {
+            metrics.time(SessionMetrics.INVALIDATE, start);
+            endBudget(budgeted);
+        }
+    }
+
+    public Map<String, byte[]> getAllBytes(final Collection<String> sessionIDs) {
+        logger.debug("getAllBytes({} session(s))...", sessionIDs.size());
+
+        boolean budgeted = beginBudget();
+
+        long start = System.nanoTime();
+        try {
+            return readAll(sessionIDs);
+
+        } catch(RuntimeException ex) {
+            metrics.error(SessionMetrics.GET_ALL);
+            throw ex;
+
+        } finally {
+            metrics.time(SessionMetrics.GET_ALL, start);
+            endBudget(budgeted);
+        }
+    }
+
+    private Map<String, byte[]> readAll(final Collection<String> sessionIDs) {
+        List<String> identifiers = new ArrayList<>(sessionIDs);
+
+        boolean[] refresh = new boolean[identifiers.size()];
+        for(int index = 0; index < refresh.length; index++) {
+            refresh[index] = refresher.isDue(identifiers.get(index));
+        }
+
+        List<byte[]> stored = store.readAllAndTouch(toKeys(identifiers), refresh);
+
+        for(int index = 0; index < refresh.length; index++) {
+            if(refresh[index]) {
+                refresher.refreshed(identifiers.get(index));
+            }
+        }
+
+        byte[][] decoded = new byte[identifiers.size()][];
+        IntStream indexes = IntStream.range(0, decoded.length);
+
+        // Decryption dominates the cost of large batches, so it is spread across cores.
+        if(decoded.length >= config.getBatchParallelThreshold()) {
+            indexes = indexes.parallel();
+        }
+        indexes.forEach(index -> {
+            byte[] data = stored.get(index);
+            if(data != null && data.length > 0) {
+                metrics.size(SessionMetrics.PAYLOAD_READ, data.length);
+                checkCurrent(identifiers.get(index), data);
+
+                decoded[index] = decodeOrFail(data);
+            }
+        });
+
+        Map<String, byte[]> sessions = new LinkedHashMap<>();
+        for(int index = 0; index < decoded.length; index++) {
+            if(decoded[index] != null) {
+                sessions.put(identifiers.get(index), decoded[index]);
+            }
+        }
+
+        if(sessions.size() < identifiers.size()) {
+            metrics.miss(identifiers.size() - sessions.size());
+        }
+        return sessions;
+    }
+
+    public void setAllBytes(final Map<String, byte[]> sessions) throws SessionNotPersistedException {
+        logger.debug("setAllBytes({} session(s))...", sessions.size());
+
+        boolean budgeted = beginBudget();
+
+        long start = System.nanoTime();
+        try {
+            writeAll(sessions);
+
+        } catch(SessionNotPersistedException | RuntimeException ex) {
+            metrics.error(SessionMetrics.SET_ALL);
+            throw ex;
+
+        } finally {
+            metrics.time(SessionMetrics.SET_ALL, start);
+            endBudget(budgeted);
+        }
+    }
+
+    private void writeAll(final Map<String, byte[]> sessions) throws SessionNotPersistedException {
+        List<String> identifiers = new ArrayList<>(sessions.keySet());
+
+        byte[][] encoded = new byte[identifiers.size()][];
+        IntStream indexes = IntStream.range(0, encoded.length);
+
+        if(encoded.length >= config.getBatchParallelThreshold()) {
+            indexes = indexes.parallel();
+        }
+        indexes.forEach(index -> {
+            encoded[index] = encodeOrFail(sessions.get(identifiers.get(index)));
+            metrics.size(SessionMetrics.PAYLOAD_WRITTEN, encoded[index].length);
+        });
+
+        List<String> responses = store.writeAllWithTimeout(toKeys(identifiers), encoded);
+        identifiers.forEach(refresher::refreshed);
+
+        for(String response : responses) {
+            if(!SESSION_RESPONSE_CODE.equalsIgnoreCase(response)) {
+                logger.warn("Session response was not successful, warning raised...");
+                throw new SessionNotPersistedException(SESSION_FAILED_TO_PERSIST);
+            }
+        }
+    }
+
+    public void invalidateAll(final Collection<String> sessionIDs) {
+        logger.debug("invalidateAll({} session(s))...", sessionIDs.size());
+        if(sessionIDs.isEmpty()) {
+            return;
+        }
+        sessionIDs.forEach(refresher::forget);
+
+        boolean budgeted = beginBudget();
+
+        long start = System.nanoTime();
+        try {
+            long response = store.delete(sessionIDs);
+            logger.debug("response: ({})...", response);
+
+        } catch(RuntimeException ex) {
+            metrics.error(SessionMetrics.INVALIDATE_ALL);
+            throw ex;
+
+        } finally {
+            metrics.time(SessionMetrics.INVALIDATE_ALL, start);
+            endBudget(budgeted);
+        }
+    }
+
+    public boolean touch(final String sessionID) {
+        boolean exists = updateTimeoutInterval(sessionID) > 0;
+        if(exists) {
+            refresher.refreshed(sessionID);
+        }
+        return exists;
+    }
+
+    public Collection<String> touchAll(final Collection<String> sessionIDs) {
+        logger.debug("touchAll({} session(s))...", sessionIDs.size());
+
+        List<String> identifiers = new ArrayList<>(sessionIDs);
+        List<Long> responses;
+
+        boolean budgeted = beginBudget();
+
+        long start = System.nanoTime();
+        try {
+            responses = store.expireAll(identifiers);
+
+        } catch(RuntimeException ex) {
+            metrics.error(SessionMetrics.TOUCH_ALL);
+            throw ex;
+
+        } finally {
+            metrics.time(SessionMetrics.TOUCH_ALL, start);
+            endBudget(budgeted);
+        }
+
+        // Sessions which no longer exist could not have their timeout extended.
+        List<String> missing = new ArrayList<>();
+        for(int index = 0; index < identifiers.size(); index++) {
+            if(responses.get(index) == 0) {
+                missing.add(identifiers.get(index));
+            } else {
+                refresher.refreshed(identifiers.get(index));
+            }
+        }
+        return missing;
+    }
+
+    public Map<String, byte[]> getAttributes(final String sessionID, final Collection<String> names) {
+        logger.debug("getAttributes({}, {} name(s))...", sessionID, names.size());
+        if(names.isEmpty()) {
+            return new LinkedHashMap<>();
+        }
+
+        boolean budgeted = beginBudget();
+
+        long start = System.nanoTime();
+        try {
+            List<String> fields = new ArrayList<>(names);
+
+            boolean refresh = refresher.isDue(sessionID);
+
+            List<byte[]> stored = store.readFields(SafeEncoder.encode(sessionID), toKeys(fields), refresh);
+            if(refresh) {
+                refresher.refreshed(sessionID);
+            }
+
+            // Each attribute is encoded (and encrypted) on its own.
+            Map<String, byte[]> attributes = new LinkedHashMap<>();
+            for(int index = 0; index < fields.size(); index++) {
+                byte[] data = stored.get(index);
+                if(data != null && data.length > 0) {
+                    metrics.size(SessionMetrics.PAYLOAD_READ, data.length);
+                    attributes.put(fields.get(index), decodeOrFail(data));
+                }
+            }
+            return attributes;
+
+        } catch(RuntimeException ex) {
+            metrics.error(SessionMetrics.GET_ATTRIBUTES);
+            throw ex;
+
+        } finally {
+            metrics.time(SessionMetrics.GET_ATTRIBUTES, start);
+            endBudget(budgeted);
+        }
+    }
+
+    public void setAttributes(final String sessionID, final Map<String, byte[]> attributes) throws SessionNotPersistedException {
+        logger.debug("setAttributes({}, {} attribute(s))...", sessionID, attributes.size());
+        if(attributes.isEmpty()) {
+            return;
+        }
+
+        boolean budgeted = beginBudget();
+
+        long start = System.nanoTime();
+        try {
+            Map<byte[], byte[]> fields = new LinkedHashMap<>();
+            attributes.forEach((name, data) -> {
+                byte[] encoded = encodeOrFail(data);
+                metrics.size(SessionMetrics.PAYLOAD_WRITTEN, encoded.length);
+
+                fields.put(SafeEncoder.encode(name), encoded);
+            });
+
+            String response = store.writeFields(SafeEncoder.encode(sessionID), fields);
+            logger.debug("Session response: [{}]", response);
+
+            refresher.refreshed(sessionID);
+
+            if(!SESSION_RESPONSE_CODE.equalsIgnoreCase(response)) {
+                logger.warn("Session response was not successful, warning raised...");
+                throw new SessionNotPersistedException(SESSION_FAILED_TO_PERSIST);
+            }
+
+        } catch(SessionNotPersistedException | RuntimeException ex) {
+            metrics.error(SessionMetrics.SET_ATTRIBUTES);
+            throw ex;
+
+        } finally {
+            metrics.time(SessionMetrics.SET_ATTRIBUTES, start);
+            endBudget(budgeted);
+        }
+    }
+
+    public void removeAttributes(final String sessionID, final Collection<String> names) {
+        logger.debug("removeAttributes({}, {} name(s))...", sessionID, names.size());
+        if(names.isEmpty()) {
+            return;
+        }
+
+        boolean budgeted = beginBudget();
+
+        long start = System.nanoTime();
+        try {
+            long response = store.deleteFields(SafeEncoder.encode(sessionID), toKeys(new ArrayList<>(names)));
+            logger.debug("response: ({})...", response);
+
+        } catch(RuntimeException ex) {
+            metrics.error(SessionMetrics.REMOVE_ATTRIBUTES);
+            throw ex;
+
+        } finally {
+            metrics.time(SessionMetrics.REMOVE_ATTRIBUTES, start);
+            endBudget(budgeted);
+        }
+    }
+
+    // Every operation runs within the time budget, unless one is already running.
+    private boolean beginBudget() {
+        return SessionDeadline.begin(config.getOperationBudgetInMillis());
+    }
+
+    private static void endBudget(final boolean budgeted) {
+        if(budgeted) {
+            SessionDeadline.clear();
+        }
+    }
+
+    private byte[] encodeOrFail(final byte[] data) {
+        long start = System.nanoTime();
+        try {
+            return encode(data);
+
+        } catch(GeneralSecurityException ex) {
+            logger.warn("Data could not be encoded for the current store: " + ex.toString());
+            throw new SessionTechnicalException(ex);
+
+        } finally {
+            metrics.time(SessionMetrics.ENCODE, start);
+        }
+    }
+
+    private byte[] decodeOrFail(final byte[] stored) {
+        long start = System.nanoTime();
+        try {
+            // The version is of no concern to the codec, so is removed before decoding.
+            return decode(SessionEnvelope.isVersioned(stored) ? SessionEnvelope.withoutVersion(stored) : stored);
+
+        } catch(GeneralSecurityException | DataFormatException | IllegalArgumentException ex) {
+            logger.error("A technical error was raised: " + ex.toString());
             throw new SessionTechnicalException(ex);
+
+        } finally {
+            metrics.time(SessionMetrics.DECODE, start);
         }
     }
 
+    // A session which is not current is rewritten in full when next saved, even when unchanged.
+    private void checkCurrent(final String sessionID, final byte[] stored) {
+        if(!isCurrent(stored)) {
+            logger.debug("Session [{}] is due to be re-encoded...", sessionID);
+            metrics.count(SessionMetrics.RETIRED_KEY_READS, 1);
+
+            SessionFingerprints.markStale(sessionID);
+        }
+    }
+
+    private static byte[][] toKeys(final List<String> sessionIDs) {
+        byte[][] keys = new byte[sessionIDs.size()][];
+        for(int index = 0; index < keys.length; index++) {
+            keys[index] = SafeEncoder.encode(sessionIDs.get(index));
+        }
+        return keys;
+    }
+
     long updateTimeoutInterval(final String sessionID)
         throws SessionTechnicalException {
 
         logger.debug("updateTimeoutInterval({})...", sessionID);
-        try {
-            Jedis connection = getConnection();
 
-            long result = connection.expire(sessionID, config.getSessionTimeoutInSeconds());
+        boolean budgeted = beginBudget();
 
-            connection.close();
-
-            return result;
+        long start = System.nanoTime();
+        try {
+            return store.expire(sessionID);
 
         } catch(Exception ex) {
+            metrics.error(SessionMetrics.TOUCH);
             throw new SessionTechnicalException(ex);
+
+        } finally {
+            metrics.time(SessionMetrics.TOUCH, start);
+            endBudget(budgeted);
         }
     }
 }
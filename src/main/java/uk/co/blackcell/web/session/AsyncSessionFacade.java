@@ -0,0 +1,250 @@
+/**
+ * This is the asynchronous session facade, which runs session requests on a dedicated, bounded
+ * pool of I/O threads, so callers (such as Play's default dispatcher) are never blocked on the
+ * Redis socket or connection pool. When the work queue is full, requests are rejected rather
+ * than queued without limit, and requests which waited in the queue beyond their time budget are
+ * dropped without visiting the store, since their callers have stopped waiting for them.
+ *
+ * The same threads send the parts of a large batch concurrently (such as the hash slot groups
+ * of a Redis Cluster batch), each under the time budget of the request the batch belongs to.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.blackcell.web.session.exceptions.SessionTechnicalException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static uk.co.blackcell.web.session.constants.SessionConstants.SESSION_BUDGET_EXHAUSTED;
+import static uk.co.blackcell.web.session.constants.SessionConstants.SESSION_STORE_CLOSED;
+
+class AsyncSessionFacade
+{
+    private static final Logger logger = LoggerFactory.getLogger(AsyncSessionFacade.class);
+
+    private static final String THREAD_NAME_PREFIX          = "session-io-";
+
+    private static final SessionMetrics metrics = SessionMetrics.getInstance();
+
+    private static volatile ThreadPoolExecutor executor;
+
+    private final ISessionFacade session;
+
+    AsyncSessionFacade(final ISessionFacade session) {
+        logger.debug("AsyncSessionFacade constructor.");
+
+        this.session = session;
+
+        // Only the first facade needs to take the lock.
+        if(executor == null) {
+            createExecutor();
+        }
+    }
+
+    private static synchronized void createExecutor() {
+        if(executor == null) {
+            SessionConfig config = SessionConfig.getInstance();
+
+            int threads = config.getAsyncThreads();
+            int queueSize = config.getAsyncQueueSize();
+
+            logger.debug("Creating session I/O executor with {} thread(s), queue of {}...", threads, queueSize);
+
+            AtomicInteger count = new AtomicInteger();
+            executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueSize), runnable -> {
+                        Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+    }
+
+    static void prestart() {
+        createExecutor();
+        executor.prestartAllCoreThreads();
+    }
+
+    // Requests already accepted are completed; new requests are rejected from now on.
+    static synchronized void shutdown(final long deadlineNanos) {
+        if(executor != null) {
+            logger.debug("Shutting down session I/O executor...");
+
+            ThreadPoolExecutor draining = executor;
+            executor = null;
+
+            draining.shutdown();
+            try {
+                if(!draining.awaitTermination(Math.max(deadlineNanos - System.nanoTime(), 0), TimeUnit.NANOSECONDS)) {
+                    logger.warn("{} session request(s) were abandoned at shutdown...", draining.shutdownNow().size());
+                }
+            } catch(InterruptedException ex) {
+                draining.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Runs the request for every part on the I/O threads, and waits for them all. Parts are run by
+    // the caller when the executor is stopped or saturated, or when the caller is itself an I/O
+    // thread, which must not wait on the queue it is there to drain.
+    static <T> void runAll(final Collection<T> parts, final Consumer<T> request) {
+        ThreadPoolExecutor current = executor;
+        if(current == null || Thread.currentThread().getName().startsWith(THREAD_NAME_PREFIX)) {
+            parts.forEach(request);
+            return;
+        }
+
+        OptionalLong deadline = SessionDeadline.get();
+
+        List<Future<?>> results = new ArrayList<>(parts.size());
+        for(T part : parts) {
+            try {
+                results.add(current.submit(() -> runWithin(deadline, () -> request.accept(part))));
+
+            } catch(RejectedExecutionException ex) {
+                request.accept(part);
+            }
+        }
+
+        for(Future<?> result : results) {
+            try {
+                result.get();
+
+            } catch(ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if(cause instanceof RuntimeException) {
+                    throw (RuntimeException)cause;
+                }
+                if(cause instanceof Error) {
+                    throw (Error)cause;
+                }
+                throw new SessionTechnicalException(cause);
+
+            } catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new SessionTechnicalException(ex);
+            }
+        }
+    }
+
+    private static void runWithin(final OptionalLong deadline, final Runnable request) {
+        if(!deadline.isPresent()) {
+            request.run();
+            return;
+        }
+
+        if(deadline.getAsLong() - System.nanoTime() <= 0) {
+            throw new SessionTechnicalException(SESSION_BUDGET_EXHAUSTED);
+        }
+
+        SessionDeadline.set(deadline.getAsLong());
+        try {
+            request.run();
+
+        } finally {
+            SessionDeadline.clear();
+        }
+    }
+
+    CompletionStage<Void> ping(final String sessionID) {
+        return submit(() -> {
+            session.ping(sessionID);
+            return null;
+        });
+    }
+
+    CompletionStage<String> getData(final String sessionID) {
+        return submit(() -> session.getData(sessionID));
+    }
+
+    CompletionStage<Void> setData(final String sessionID, final String data) {
+        return submit(() -> {
+            session.setData(sessionID, data);
+            return null;
+        });
+    }
+
+    CompletionStage<byte[]> getBytes(final String sessionID) {
+        return submit(() -> session.getBytes(sessionID));
+    }
+
+    CompletionStage<Void> setBytes(final String sessionID, final byte[] data) {
+        return submit(() -> {
+            session.setBytes(sessionID, data);
+            return null;
+        });
+    }
+
+    CompletionStage<Void> invalidate(final String sessionID) {
+        return submit(() -> {
+            session.invalidate(sessionID);
+            return null;
+        });
+    }
+
+    private <T> CompletionStage<T> submit(final Callable<T> request) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+
+        ThreadPoolExecutor current = executor;
+        if(current == null) {
+            result.completeExceptionally(new SessionTechnicalException(SESSION_STORE_CLOSED));
+            return result;
+        }
+
+        // The time budget starts when the request is submitted, so time spent queued counts.
+        long budgetMillis = SessionConfig.getInstance().getOperationBudgetInMillis();
+        long deadline = SessionDeadline.after(budgetMillis);
+
+        try {
+            current.execute(() -> {
+                if(budgetMillis > 0 && deadline - System.nanoTime() <= 0) {
+                    metrics.count(SessionMetrics.SHED, 1);
+                    result.completeExceptionally(new SessionTechnicalException(SESSION_BUDGET_EXHAUSTED));
+                    return;
+                }
+
+                if(budgetMillis > 0) {
+                    SessionDeadline.set(deadline);
+                }
+                try {
+                    result.complete(request.call());
+
+                } catch(Exception ex) {
+                    result.completeExceptionally(ex);
+
+                } catch(Throwable ex) {
+                    // The caller is still told, rather than left waiting, before the error is rethrown.
+                    result.completeExceptionally(ex);
+                    throw ex;
+
+                } finally {
+                    SessionDeadline.clear();
+                }
+            });
+
+        } catch(RejectedExecutionException ex) {
+            logger.warn("Session I/O executor is saturated, request rejected...");
+            result.completeExceptionally(new SessionTechnicalException(ex));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * This is the circuit-breaking session facade, which runs every request through the session
+ * circuit breaker. While the circuit is open, requests fail at once with a technical exception,
+ * rather than each waiting out connection and socket timeouts against a store which is down or
+ * overloaded. A session not being found, or a versioned save
+ * conflicting with another, is not a failure.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.blackcell.web.session.exceptions.SessionConflictException;
+import uk.co.blackcell.web.session.exceptions.SessionNotFoundException;
+import uk.co.blackcell.web.session.exceptions.SessionNotPersistedException;
+import uk.co.blackcell.web.session.exceptions.SessionTechnicalException;
+
+import java.util.Collection;
+import java.util.Map;
+
+import static uk.co.blackcell.web.session.constants.SessionConstants.SESSION_CIRCUIT_OPEN;
+
+class CircuitBreakingSessionFacade extends ForwardingSessionFacade
+{
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreakingSessionFacade.class);
+
+    private static final SessionMetrics metrics = SessionMetrics.getInstance();
+
+    CircuitBreakingSessionFacade(final ISessionFacade delegate) {
+        super(delegate);
+        logger.debug("CircuitBreakingSessionFacade constructor.");
+    }
+
+    public void ping(final String sessionID) {
+        guard(() -> {
+            super.ping(sessionID);
+            return null;
+        });
+    }
+
+    public String getData(final String sessionID) throws SessionNotFoundException {
+        return guard(() -> super.getData(sessionID));
+    }
+
+    public void setData(final String sessionID, final String data) throws SessionNotPersistedException {
+        guard(() -> {
+            super.setData(sessionID, data);
+            return null;
+        });
+    }
+
+    public byte[] getBytes(final String sessionID) throws SessionNotFoundException {
+        return guard(() -> super.getBytes(sessionID));
+    }
+
+    public void setBytes(final String sessionID, final byte[] data) throws SessionNotPersistedException {
+        guard(() -> {
+            super.setBytes(sessionID, data);
+            return null;
+        });
+    }
+
+    public VersionedSession getVersionedBytes(final String sessionID) throws SessionNotFoundException {
+        return guard(() -> super.getVersionedBytes(sessionID));
+    }
+
+    public long setVersionedBytes(final String sessionID, final byte[] data, final long version) throws SessionNotPersistedException {
+        return guard(() -> super.setVersionedBytes(sessionID, data, version));
+    }
+
+    public void invalidate(final String sessionID) {
+        guard(() -> {
+            super.invalidate(sessionID);
+            return null;
+        });
+    }
+
+    public Map<String, byte[]> getAllBytes(final Collection<String> sessionIDs) {
+        return guard(() -> super.getAllBytes(sessionIDs));
+    }
+
+    public void setAllBytes(final Map<String, byte[]> sessions) throws SessionNotPersistedException {
+        guard(() -> {
+            super.setAllBytes(sessions);
+            return null;
+        });
+    }
+
+    public void invalidateAll(final Collection<String> sessionIDs) {
+        guard(() -> {
+            super.invalidateAll(sessionIDs);
+            return null;
+        });
+    }
+
+    public boolean touch(final String sessionID) {
+        return guard(() -> super.touch(sessionID));
+    }
+
+    public Collection<String> touchAll(final Collection<String> sessionIDs) {
+        return guard(() -> super.touchAll(sessionIDs));
+    }
+
+    public Map<String, byte[]> getAttributes(final String sessionID, final Collection<String> names) {
+        return guard(() -> super.getAttributes(sessionID, names));
+    }
+
+    public void setAttributes(final String sessionID, final Map<String, byte[]> attributes) throws SessionNotPersistedException {
+        guard(() -> {
+            super.setAttributes(sessionID, attributes);
+            return null;
+        });
+    }
+
+    public void removeAttributes(final String sessionID, final Collection<String> names) {
+        guard(() -> {
+            super.removeAttributes(sessionID, names);
+            return null;
+        });
+    }
+
+    private <T, E extends Exception> T guard(final Request<T, E> request) throws E {
+        SessionCircuitBreaker breaker = SessionCircuitBreaker.getInstance();
+        if(!breaker.tryAcquire()) {
+            metrics.count(SessionMetrics.CIRCUIT_REJECTED, 1);
+            throw new SessionTechnicalException(SESSION_CIRCUIT_OPEN);
+        }
+
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = request.call();
+            failed = false;
+            return result;
+
+        } catch(Exception ex) {
+            failed = !(ex instanceof SessionNotFoundException || ex instanceof SessionConflictException);
+            throw ex;
+
+        } finally {
+            if(failed) {
+                breaker.onFailure(System.nanoTime() - start);
+            } else {
+                breaker.onSuccess(System.nanoTime() - start);
+            }
+        }
+    }
+
+    private interface Request<T, E extends Exception>
+    {
+        T call() throws E;
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * This is the dirty-checking session facade. It compares the data being saved with the
+ * fingerprint of what this node last read or wrote for the session, and when nothing has
+ * changed, only the session timeout is refreshed, avoiding re-encryption, a full rewrite and
+ * its replication. Should the session have expired in the meantime, or have been read with a
+ * retired encryption key, it is written in full. Writes are only skipped while the changes other
+ * nodes announce are being received, as they evict the fingerprints of the sessions changed.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.blackcell.web.session.exceptions.SessionNotFoundException;
+import uk.co.blackcell.web.session.exceptions.SessionNotPersistedException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+class DirtyCheckingSessionFacade extends ForwardingSessionFacade
+{
+    private static final Logger logger = LoggerFactory.getLogger(DirtyCheckingSessionFacade.class);
+
+    private final SessionFingerprints fingerprints = SessionFingerprints.getInstance();
+
+    private final Optional<SessionNearCache> invalidations;
+
+    DirtyCheckingSessionFacade(final ISessionFacade delegate, final Optional<SessionNearCache> invalidations) {
+        super(delegate);
+        logger.debug("DirtyCheckingSessionFacade constructor.");
+
+        this.invalidations = invalidations;
+    }
+
+    public String getData(final String sessionID) throws SessionNotFoundException {
+        return new String(getBytes(sessionID), StandardCharsets.UTF_8);
+    }
+
+    public void setData(final String sessionID, final String data) throws SessionNotPersistedException {
+        setBytes(sessionID, data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public byte[] getBytes(final String sessionID) throws SessionNotFoundException {
+        long generation = fingerprints.generation(sessionID);
+
+        byte[] data = super.getBytes(sessionID);
+        fingerprints.record(sessionID, data, generation);
+
+        return data;
+    }
+
+    public VersionedSession getVersionedBytes(final String sessionID) throws SessionNotFoundException {
+        long generation = fingerprints.generation(sessionID);
+
+        VersionedSession session = super.getVersionedBytes(sessionID);
+        fingerprints.record(sessionID, session.getBytes(), generation);
+
+        return session;
+    }
+
+    // A versioned write is never skipped, as its version has to advance.
+    public long setVersionedBytes(final String sessionID, final byte[] data, final long version) throws SessionNotPersistedException {
+        long generation = fingerprints.generation(sessionID);
+
+        long written = super.setVersionedBytes(sessionID, data, version);
+        fingerprints.written(sessionID, data, generation);
+
+        return written;
+    }
+
+    public void setBytes(final String sessionID, final byte[] data) throws SessionNotPersistedException {
+        if(isUnchanged(sessionID, data) && super.touch(sessionID)) {
+            logger.debug("Session [{}] is unchanged, timeout refreshed only...", sessionID);
+            fingerprints.writesAvoided(1);
+            return;
+        }
+
+        long generation = fingerprints.generation(sessionID);
+
+        super.setBytes(sessionID, data);
+        fingerprints.written(sessionID, data, generation);
+    }
+
+    public void invalidate(final String sessionID) {
+        fingerprints.remove(sessionID);
+
+        super.invalidate(sessionID);
+    }
+
+    public Map<String, byte[]> getAllBytes(final Collection<String> sessionIDs) {
+        Map<String, Long> generations = generations(sessionIDs);
+
+        Map<String, byte[]> sessions = super.getAllBytes(sessionIDs);
+        sessions.forEach((sessionID, data) -> fingerprints.record(sessionID, data, generations.get(sessionID)));
+
+        return sessions;
+    }
+
+    public void setAllBytes(final Map<String, byte[]> sessions) throws SessionNotPersistedException {
+        Map<String, byte[]> changed = new LinkedHashMap<>();
+        List<String> unchanged = new ArrayList<>();
+
+        sessions.forEach((sessionID, data) -> {
+            if(isUnchanged(sessionID, data)) {
+                unchanged.add(sessionID);
+            } else {
+                changed.put(sessionID, data);
+            }
+        });
+
+        if(!unchanged.isEmpty()) {
+            // Any unchanged session which has since expired must be written in full.
+            Collection<String> expired = super.touchAll(unchanged);
+            expired.forEach(sessionID -> changed.put(sessionID, sessions.get(sessionID)));
+
+            fingerprints.writesAvoided(unchanged.size() - expired.size());
+        }
+
+        if(!changed.isEmpty()) {
+            Map<String, Long> generations = generations(changed.keySet());
+
+            super.setAllBytes(changed);
+            changed.forEach((sessionID, data) -> fingerprints.written(sessionID, data, generations.get(sessionID)));
+        }
+    }
+
+    public void invalidateAll(final Collection<String> sessionIDs) {
+        sessionIDs.forEach(fingerprints::remove);
+
+        super.invalidateAll(sessionIDs);
+    }
+
+    private Map<String, Long> generations(final Collection<String> sessionIDs) {
+        Map<String, Long> generations = new LinkedHashMap<>();
+        sessionIDs.forEach(sessionID -> generations.put(sessionID, fingerprints.generation(sessionID)));
+
+        return generations;
+    }
+
+    private boolean isUnchanged(final String sessionID, final byte[] data) {
+        boolean subscribed = invalidations.map(SessionNearCache::isSubscribed).orElse(true);
+        return subscribed && fingerprints.isUnchanged(sessionID, data);
+    }
+}
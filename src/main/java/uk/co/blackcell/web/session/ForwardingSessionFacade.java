@@ -0,0 +1,91 @@
+/**
+ * This is the forwarding session facade, which delegates every request to another session
+ * facade. Decorating implementations override only the operations they need to change.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import uk.co.blackcell.web.session.exceptions.SessionNotFoundException;
+import uk.co.blackcell.web.session.exceptions.SessionNotPersistedException;
+
+import java.util.Collection;
+import java.util.Map;
+
+abstract class ForwardingSessionFacade implements ISessionFacade
+{
+    private final ISessionFacade delegate;
+
+    ForwardingSessionFacade(final ISessionFacade delegate) {
+        this.delegate = delegate;
+    }
+
+    ISessionFacade delegate() {
+        return delegate;
+    }
+
+    public void ping(final String sessionID) {
+        delegate.ping(sessionID);
+    }
+
+    public String getData(final String sessionID) throws SessionNotFoundException {
+        return delegate.getData(sessionID);
+    }
+
+    public void setData(final String sessionID, final String data) throws SessionNotPersistedException {
+        delegate.setData(sessionID, data);
+    }
+
+    public byte[] getBytes(final String sessionID) throws SessionNotFoundException {
+        return delegate.getBytes(sessionID);
+    }
+
+    public void setBytes(final String sessionID, final byte[] data) throws SessionNotPersistedException {
+        delegate.setBytes(sessionID, data);
+    }
+
+    public VersionedSession getVersionedBytes(final String sessionID) throws SessionNotFoundException {
+        return delegate.getVersionedBytes(sessionID);
+    }
+
+    public long setVersionedBytes(final String sessionID, final byte[] data, final long version) throws SessionNotPersistedException {
+        return delegate.setVersionedBytes(sessionID, data, version);
+    }
+
+    public void invalidate(final String sessionID) {
+        delegate.invalidate(sessionID);
+    }
+
+    public Map<String, byte[]> getAllBytes(final Collection<String> sessionIDs) {
+        return delegate.getAllBytes(sessionIDs);
+    }
+
+    public void setAllBytes(final Map<String, byte[]> sessions) throws SessionNotPersistedException {
+        delegate.setAllBytes(sessions);
+    }
+
+    public void invalidateAll(final Collection<String> sessionIDs) {
+        delegate.invalidateAll(sessionIDs);
+    }
+
+    public boolean touch(final String sessionID) {
+        return delegate.touch(sessionID);
+    }
+
+    public Collection<String> touchAll(final Collection<String> sessionIDs) {
+        return delegate.touchAll(sessionIDs);
+    }
+
+    public Map<String, byte[]> getAttributes(final String sessionID, final Collection<String> names) {
+        return delegate.getAttributes(sessionID, names);
+    }
+
+    public void setAttributes(final String sessionID, final Map<String, byte[]> attributes) throws SessionNotPersistedException {
+        delegate.setAttributes(sessionID, attributes);
+    }
+
+    public void removeAttributes(final String sessionID, final Collection<String> names) {
+        delegate.removeAttributes(sessionID, names);
+    }
+}
@@ -10,6 +10,9 @@ package uk.co.blackcell.web.session;
 import uk.co.blackcell.web.session.exceptions.SessionNotFoundException;
 import uk.co.blackcell.web.session.exceptions.SessionNotPersistedException;
 
+import java.util.Collection;
+import java.util.Map;
+
 interface ISessionFacade
 {
     void ping(final String sessionID);
@@ -20,5 +23,35 @@ interface ISessionFacade
     void setData(final String sessionID, final String data)
         throws SessionNotPersistedException;
 
+    byte[] getBytes(final String sessionID)
+        throws SessionNotFoundException;
+
+    void setBytes(final String sessionID, final byte[] data)
+        throws SessionNotPersistedException;
+
+    VersionedSession getVersionedBytes(final String sessionID)
+        throws SessionNotFoundException;
+
+    long setVersionedBytes(final String sessionID, final byte[] data, final long version)
+        throws SessionNotPersistedException;
+
     void invalidate(final String sessionID);
+
+    Map<String, byte[]> getAllBytes(final Collection<String> sessionIDs);
+
+    void setAllBytes(final Map<String, byte[]> sessions)
+        throws SessionNotPersistedException;
+
+    void invalidateAll(final Collection<String> sessionIDs);
+
+    boolean touch(final String sessionID);
+
+    Collection<String> touchAll(final Collection<String> sessionIDs);
+
+    Map<String, byte[]> getAttributes(final String sessionID, final Collection<String> names);
+
+    void setAttributes(final String sessionID, final Map<String, byte[]> attributes)
+        throws SessionNotPersistedException;
+
+    void removeAttributes(final String sessionID, final Collection<String> names);
 }
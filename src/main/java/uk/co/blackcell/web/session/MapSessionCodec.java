@@ -0,0 +1,270 @@
+/**
+ * This is the map session codec, a compact binary codec for sessions held as a map of named
+ * values. Values may be null, booleans, integers, longs, doubles, strings, byte arrays, lists
+ * and maps with string keys, nested to any depth. Each value is a tag byte followed by its
+ * data: numbers and lengths are variable-length (zig-zag) integers, and strings are UTF-8.
+ *
+ * Decoded maps keep the order in which their entries were written.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class MapSessionCodec implements SessionCodec<Map<String, Object>>
+{
+    // Leads every encoded session, so the format can be changed without misreading old data.
+    private static final byte FORMAT                = 0x01;
+
+    private static final byte TAG_NULL              = 0x00;
+    private static final byte TAG_FALSE             = 0x01;
+    private static final byte TAG_TRUE              = 0x02;
+    private static final byte TAG_INTEGER           = 0x03;
+    private static final byte TAG_LONG              = 0x04;
+    private static final byte TAG_DOUBLE            = 0x05;
+    private static final byte TAG_STRING            = 0x06;
+    private static final byte TAG_BYTES             = 0x07;
+    private static final byte TAG_LIST              = 0x08;
+    private static final byte TAG_MAP               = 0x09;
+
+    private static final int INITIAL_CAPACITY       = 256;
+
+    public byte[] encode(final Map<String, Object> session) {
+        Output output = new Output();
+
+        output.write(FORMAT);
+        writeEntries(output, session);
+
+        return output.toByteArray();
+    }
+
+    public Map<String, Object> decode(final byte[] data) {
+        ByteBuffer input = ByteBuffer.wrap(data);
+        try {
+            if(input.get() != FORMAT) {
+                throw new IllegalArgumentException("Session data is not in a known format");
+            }
+
+            Map<String, Object> session = readEntries(input);
+            if(input.hasRemaining()) {
+                throw new IllegalArgumentException("Session data has " + input.remaining() + " unexpected trailing byte(s)");
+            }
+            return session;
+
+        } catch(BufferUnderflowException ex) {
+            throw new IllegalArgumentException("Session data is truncated", ex);
+        }
+    }
+
+    private static void writeEntries(final Output output, final Map<?, ?> entries) {
+        output.writeVarint(entries.size());
+
+        for(Map.Entry<?, ?> entry : entries.entrySet()) {
+            if(!(entry.getKey() instanceof String)) {
+                throw new IllegalArgumentException("Session map keys must be strings: " + entry.getKey());
+            }
+            output.writeString((String)entry.getKey());
+            writeValue(output, entry.getValue());
+        }
+    }
+
+    private static void writeValue(final Output output, final Object value) {
+        if(value == null) {
+            output.write(TAG_NULL);
+
+        } else if(value instanceof Boolean) {
+            output.write((Boolean)value ? TAG_TRUE : TAG_FALSE);
+
+        } else if(value instanceof Integer) {
+            output.write(TAG_INTEGER);
+            output.writeVarint(zigZag((Integer)value));
+
+        } else if(value instanceof Long) {
+            output.write(TAG_LONG);
+            output.writeVarint(zigZag((Long)value));
+
+        } else if(value instanceof Double) {
+            output.write(TAG_DOUBLE);
+            output.writeLong(Double.doubleToLongBits((Double)value));
+
+        } else if(value instanceof String) {
+            output.write(TAG_STRING);
+            output.writeString((String)value);
+
+        } else if(value instanceof byte[]) {
+            output.write(TAG_BYTES);
+            output.writeVarint(((byte[])value).length);
+            output.write((byte[])value);
+
+        } else if(value instanceof List) {
+            output.write(TAG_LIST);
+            output.writeVarint(((List<?>)value).size());
+            for(Object element : (List<?>)value) {
+                writeValue(output, element);
+            }
+
+        } else if(value instanceof Map) {
+            output.write(TAG_MAP);
+            writeEntries(output, (Map<?, ?>)value);
+
+        } else {
+            throw new IllegalArgumentException("Session values of type " + value.getClass().getName() + " are not supported");
+        }
+    }
+
+    private static Map<String, Object> readEntries(final ByteBuffer input) {
+        int size = readLength(input);
+
+        Map<String, Object> entries = new LinkedHashMap<>();
+        for(int index = 0; index < size; index++) {
+            String key = readString(input);
+            entries.put(key, readValue(input));
+        }
+        return entries;
+    }
+
+    private static Object readValue(final ByteBuffer input) {
+        byte tag = input.get();
+        switch(tag) {
+            case TAG_NULL:
+                return null;
+
+            case TAG_FALSE:
+                return Boolean.FALSE;
+
+            case TAG_TRUE:
+                return Boolean.TRUE;
+
+            case TAG_INTEGER:
+                return (int)unZigZag(readVarint(input));
+
+            case TAG_LONG:
+                return unZigZag(readVarint(input));
+
+            case TAG_DOUBLE:
+                return Double.longBitsToDouble(input.getLong());
+
+            case TAG_STRING:
+                return readString(input);
+
+            case TAG_BYTES:
+                byte[] bytes = new byte[readLength(input)];
+                input.get(bytes);
+                return bytes;
+
+            case TAG_LIST:
+                int size = readLength(input);
+                List<Object> elements = new ArrayList<>(size);
+                for(int index = 0; index < size; index++) {
+                    elements.add(readValue(input));
+                }
+                return elements;
+
+            case TAG_MAP:
+                return readEntries(input);
+
+            default:
+                throw new IllegalArgumentException("Session data holds an unknown value tag: " + tag);
+        }
+    }
+
+    private static String readString(final ByteBuffer input) {
+        int length = readLength(input);
+
+        String value = new String(input.array(), input.arrayOffset() + input.position(), length, StandardCharsets.UTF_8);
+        input.position(input.position() + length);
+
+        return value;
+    }
+
+    // Every element takes at least one byte, so a length beyond what remains is corrupt data.
+    private static int readLength(final ByteBuffer input) {
+        long length = readVarint(input);
+        if(length < 0 || length > input.remaining()) {
+            throw new IllegalArgumentException("Session data holds an invalid length: " + length);
+        }
+        return (int)length;
+    }
+
+    private static long readVarint(final ByteBuffer input) {
+        long value = 0;
+        for(int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte next = input.get();
+            value |= (long)(next & 0x7F) << shift;
+            if((next & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Session data holds a malformed number");
+    }
+
+    private static long zigZag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // A growable buffer, written without the locking of a ByteArrayOutputStream.
+    private static final class Output
+    {
+        private byte[] buffer = new byte[INITIAL_CAPACITY];
+
+        private int count;
+
+        private void ensure(final int length) {
+            if(count + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, count + length));
+            }
+        }
+
+        private void write(final byte value) {
+            ensure(1);
+            buffer[count++] = value;
+        }
+
+        private void write(final byte[] values) {
+            ensure(values.length);
+            System.arraycopy(values, 0, buffer, count, values.length);
+            count += values.length;
+        }
+
+        private void writeVarint(final long value) {
+            ensure(10);
+
+            long remaining = value;
+            while((remaining & ~0x7FL) != 0) {
+                buffer[count++] = (byte)((remaining & 0x7F) | 0x80);
+                remaining >>>= 7;
+            }
+            buffer[count++] = (byte)remaining;
+        }
+
+        private void writeLong(final long value) {
+            ensure(Long.BYTES);
+            for(int shift = Long.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+                buffer[count++] = (byte)(value >>> shift);
+            }
+        }
+
+        private void writeString(final String value) {
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(encoded.length);
+            write(encoded);
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buffer, count);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * This is the near-cache session facade, which serves recently read or written sessions from
+ * the in-process cache, and delegates to the persistent store on a miss. Changes made through
+ * this facade update the local cache, and are announced to other nodes by the store. A session
+ * is only cached if no invalidation of it arrived while it was being read or written.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.blackcell.web.session.exceptions.SessionNotFoundException;
+import uk.co.blackcell.web.session.exceptions.SessionNotPersistedException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+class NearCacheSessionFacade extends ForwardingSessionFacade
+{
+    private static final Logger logger = LoggerFactory.getLogger(NearCacheSessionFacade.class);
+
+    private final SessionNearCache cache;
+
+    private final SessionTimeoutRefresher refresher;
+
+    // The delegate may be a decorator (such as the circuit breaker) over the stored session.
+    NearCacheSessionFacade(final ISessionFacade delegate, final AbstractSessionFacade session) {
+        super(delegate);
+        logger.debug("NearCacheSessionFacade constructor.");
+
+        this.cache = SessionNearCache.getInstance(session.getStore());
+        this.refresher = SessionTimeoutRefresher.getInstance(session);
+    }
+
+    public String getData(final String sessionID) throws SessionNotFoundException {
+        return new String(getBytes(sessionID), StandardCharsets.UTF_8);
+    }
+
+    public void setData(final String sessionID, final String data) throws SessionNotPersistedException {
+        setBytes(sessionID, data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public byte[] getBytes(final String sessionID) throws SessionNotFoundException {
+        Optional<byte[]> cached = cache.get(sessionID);
+        if(cached.isPresent()) {
+            logger.debug("Session [{}] served from near-cache...", sessionID);
+
+            // The store was not visited, so its timeout is extended in the background.
+            refresher.refreshLater(sessionID);
+            return cached.get();
+        }
+
+        long generation = cache.generation(sessionID);
+
+        byte[] data = super.getBytes(sessionID);
+        cache.put(sessionID, data, generation);
+
+        return data;
+    }
+
+    public void setBytes(final String sessionID, final byte[] data) throws SessionNotPersistedException {
+        long generation = cache.invalidate(sessionID);
+
+        super.setBytes(sessionID, data);
+        cache.put(sessionID, data, generation);
+    }
+
+    // The version is only known to the store, so versioned reads always go to it.
+    public VersionedSession getVersionedBytes(final String sessionID) throws SessionNotFoundException {
+        long generation = cache.generation(sessionID);
+
+        VersionedSession session = super.getVersionedBytes(sessionID);
+        cache.put(sessionID, session.getBytes(), generation);
+
+        return session;
+    }
+
+    public long setVersionedBytes(final String sessionID, final byte[] data, final long version) throws SessionNotPersistedException {
+        long generation = cache.invalidate(sessionID);
+
+        long written = super.setVersionedBytes(sessionID, data, version);
+        cache.put(sessionID, data, generation);
+
+        return written;
+    }
+
+    public void invalidate(final String sessionID) {
+        cache.invalidate(sessionID);
+
+        super.invalidate(sessionID);
+    }
+
+    public Map<String, byte[]> getAllBytes(final Collection<String> sessionIDs) {
+        Map<String, byte[]> sessions = new LinkedHashMap<>();
+        Map<String, Long> uncached = new LinkedHashMap<>();
+
+        for(String sessionID : sessionIDs) {
+            Optional<byte[]> cached = cache.get(sessionID);
+            if(cached.isPresent()) {
+                sessions.put(sessionID, cached.get());
+                refresher.refreshLater(sessionID);
+            } else {
+                uncached.put(sessionID, cache.generation(sessionID));
+            }
+        }
+
+        if(!uncached.isEmpty()) {
+            Map<String, byte[]> found = super.getAllBytes(uncached.keySet());
+            for(Map.Entry<String, byte[]> session : found.entrySet()) {
+                cache.put(session.getKey(), session.getValue(), uncached.get(session.getKey()));
+            }
+            sessions.putAll(found);
+        }
+        return sessions;
+    }
+
+    public void setAllBytes(final Map<String, byte[]> sessions) throws SessionNotPersistedException {
+        Map<String, Long> generations = new LinkedHashMap<>();
+        sessions.keySet().forEach(sessionID -> generations.put(sessionID, cache.invalidate(sessionID)));
+
+        super.setAllBytes(sessions);
+        sessions.forEach((sessionID, data) -> cache.put(sessionID, data, generations.get(sessionID)));
+    }
+
+    public void invalidateAll(final Collection<String> sessionIDs) {
+        sessionIDs.forEach(cache::invalidate);
+
+        super.invalidateAll(sessionIDs);
+    }
+}
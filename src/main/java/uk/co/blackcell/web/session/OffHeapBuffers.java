@@ -0,0 +1,104 @@
+/**
+ * This is the off-heap buffer allocator used by the in-process session store. Buffers are
+ * direct (outside the Java heap), sized in power-of-two classes, and recycled through a free
+ * list per class, so steady-state churn allocates nothing. Every buffer allocated counts
+ * against the configured capacity until it is dropped; pooled buffers are dropped first when
+ * room is needed for a different size class.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+final class OffHeapBuffers
+{
+    private static final Logger logger = LoggerFactory.getLogger(OffHeapBuffers.class);
+
+    private static final int MINIMUM_SHIFT                  = 6;
+    private static final int CLASSES                        = Integer.SIZE - MINIMUM_SHIFT;
+
+    private final long capacity;
+
+    private final AtomicLong reserved = new AtomicLong();
+
+    private final Queue<ByteBuffer>[] free;
+
+    @SuppressWarnings("unchecked")
+    OffHeapBuffers(final long capacity) {
+        logger.debug("OffHeapBuffers({}) constructor.", capacity);
+
+        this.capacity = capacity;
+        this.free = new Queue[CLASSES];
+        for(int index = 0; index < CLASSES; index++) {
+            free[index] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    Optional<ByteBuffer> allocate(final int length) {
+        int sizeClass = sizeClass(length);
+
+        ByteBuffer buffer = free[sizeClass].poll();
+        if(buffer == null) {
+            long size = 1L << (sizeClass + MINIMUM_SHIFT);
+            if(!reserve(size) && !(trim(size) && reserve(size))) {
+                return Optional.empty();
+            }
+            buffer = ByteBuffer.allocateDirect((int)size);
+        }
+
+        buffer.clear();
+        buffer.limit(length);
+        return Optional.of(buffer);
+    }
+
+    void release(final ByteBuffer buffer) {
+        free[sizeClass(buffer.capacity())].offer(buffer);
+    }
+
+    long getReserved() {
+        return reserved.get();
+    }
+
+    long getCapacity() {
+        return capacity;
+    }
+
+    private boolean reserve(final long size) {
+        long current;
+        do {
+            current = reserved.get();
+            if(current + size > capacity) {
+                return false;
+            }
+        } while(!reserved.compareAndSet(current, current + size));
+
+        return true;
+    }
+
+    // Pooled buffers are dropped (their native memory is reclaimed with the buffer object).
+    private boolean trim(final long size) {
+        long dropped = 0;
+        for(int index = CLASSES - 1; index >= 0 && dropped < size; index--) {
+            ByteBuffer buffer;
+            while(dropped < size && (buffer = free[index].poll()) != null) {
+                reserved.addAndGet(-buffer.capacity());
+                dropped += buffer.capacity();
+            }
+        }
+        return dropped > 0;
+    }
+
+    private static int sizeClass(final int length) {
+        int shift = Integer.SIZE - Integer.numberOfLeadingZeros(Math.max(length, 1) - 1);
+        return Math.max(shift, MINIMUM_SHIFT) - MINIMUM_SHIFT;
+    }
+}
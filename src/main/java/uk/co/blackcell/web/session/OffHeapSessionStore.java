@@ -0,0 +1,529 @@
+/**
+ * This is the off-heap session store, which keeps session data within this process, for
+ * single-node and edge deployments that have no Redis to share sessions through. Session data
+ * and attributes are held in direct buffers outside the Java heap, so large numbers of sessions
+ * add no garbage collection pressure.
+ *
+ * Sessions are spread over lock stripes, so unrelated sessions never contend. Timeouts are
+ * enforced by a timer wheel (and checked on every read), and the memory used is capped: when a
+ * write would exceed the cap, the least recently used sessions are evicted to make room.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.util.SafeEncoder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+final class OffHeapSessionStore implements SessionStore
+{
+    private static final Logger logger = LoggerFactory.getLogger(OffHeapSessionStore.class);
+
+    private static final String PONG                        = "PONG";
+    private static final String OK                          = "OK";
+    private static final String FULL                        = "ERR session store is full";
+    private static final String CONFLICT                    = "CONFLICT";
+
+    private static final long BYTES_PER_MEGABYTE            = 1024L * 1024L;
+
+    private static final SessionMetrics metrics = SessionMetrics.getInstance();
+
+    private static OffHeapSessionStore instance;
+
+    private final SessionConfig config = SessionConfig.getInstance();
+
+    private final OffHeapBuffers buffers;
+    private final SessionTimerWheel wheel;
+
+    private final Stripe[] stripes;
+
+    // Where the next eviction starts, so that evictions are spread over every stripe.
+    private final AtomicInteger victim = new AtomicInteger();
+
+    private OffHeapSessionStore() {
+        logger.debug("OffHeapSessionStore constructor.");
+
+        buffers = new OffHeapBuffers(config.getOffHeapCapacityInMegabytes() * BYTES_PER_MEGABYTE);
+        wheel = new SessionTimerWheel(config.getOffHeapTickInMillis(), config.getOffHeapWheelSize());
+
+        // The stripe count is rounded up to a power of two, so a stripe is found by masking.
+        int count = Integer.highestOneBit(Math.max(config.getOffHeapStripes(), 2) - 1) << 1;
+
+        stripes = new Stripe[count];
+        for(int index = 0; index < count; index++) {
+            stripes[index] = new Stripe();
+        }
+
+        logger.info("Off-heap session store: capacity={} bytes, stripes={}", buffers.getCapacity(), count);
+    }
+
+    static synchronized OffHeapSessionStore getInstance() {
+        if(instance == null) {
+            instance = new OffHeapSessionStore();
+            instance.wheel.start(instance::expireIfDue);
+        }
+        return instance;
+    }
+
+    static synchronized void shutdown() {
+        if(instance != null) {
+            logger.debug("Shutting down the off-heap session store...");
+
+            instance.wheel.stop();
+            for(Stripe stripe : instance.stripes) {
+                stripe.lock.lock();
+                try {
+                    new ArrayList<>(stripe.sessions.keySet()).forEach(stripe::remove);
+                } finally {
+                    stripe.lock.unlock();
+                }
+            }
+            instance = null;
+        }
+    }
+
+    public String ping() {
+        return PONG;
+    }
+
+    public void warmUp(final int connections) {
+        // Memory is only reserved as sessions are written, so there is nothing to prepare.
+        logger.debug("warmUp({})...", connections);
+    }
+
+    public Optional<byte[]> readAndTouch(final byte[] key, final boolean touch) {
+        logger.debug("readAndTouch({} byte key, {})...", key.length, touch);
+
+        String sessionID = SafeEncoder.encode(key);
+        Stripe stripe = stripeOf(sessionID);
+
+        stripe.lock.lock();
+        try {
+            StoredSession session = stripe.live(sessionID);
+            if(session == null) {
+                return Optional.empty();
+            }
+            if(touch) {
+                session.deadline = deadline();
+            }
+            return Optional.ofNullable(session.data).map(OffHeapSessionStore::copy);
+
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // As in the Redis stores, a plain write over a versioned value keeps it versioned, at the next
+    // version. Should the version change before the stripe is locked again, the write is retried.
+    public String writeWithTimeout(final byte[] key, final byte[] data) {
+        logger.debug("writeWithTimeout({} byte key)...", key.length);
+
+        String sessionID = SafeEncoder.encode(key);
+        Stripe stripe = stripeOf(sessionID);
+
+        while(true) {
+            long version = versionOf(stripe, sessionID);
+            byte[] value = (version == 0) ? data : SessionEnvelope.withVersion(data, version + 1);
+
+            // Memory is found before the stripe is locked, as eviction may need to lock other stripes.
+            Optional<ByteBuffer> buffer = allocate(value);
+            if(!buffer.isPresent()) {
+                return FULL;
+            }
+
+            stripe.lock.lock();
+            try {
+                StoredSession session = stripe.live(sessionID);
+                if(version != ((session == null || session.data == null) ? 0L : SessionEnvelope.getVersion(session.data))) {
+                    buffers.release(buffer.get());
+                    continue;
+                }
+
+                session = stripe.liveOrCreate(sessionID);
+
+                release(session.data);
+                session.data = buffer.get();
+                session.deadline = deadline();
+
+                return OK;
+
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    // Versions start at one, so zero is a missing or unversioned session.
+    private static long versionOf(final Stripe stripe, final String sessionID) {
+        stripe.lock.lock();
+        try {
+            StoredSession session = stripe.live(sessionID);
+            return (session == null || session.data == null) ? 0L : SessionEnvelope.getVersion(session.data);
+
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public String writeIfVersion(final byte[] key, final byte[] version, final byte[] data) {
+        logger.debug("writeIfVersion({} byte key)...", key.length);
+
+        Optional<ByteBuffer> buffer = allocate(data);
+        if(!buffer.isPresent()) {
+            return FULL;
+        }
+
+        String sessionID = SafeEncoder.encode(key);
+        Stripe stripe = stripeOf(sessionID);
+
+        stripe.lock.lock();
+        try {
+            StoredSession session = stripe.live(sessionID);
+
+            // A missing (or unversioned) session is at version zero, as in the Redis stores.
+            long stored = (session == null || session.data == null) ? 0L : SessionEnvelope.getVersion(session.data);
+            if(stored != ByteBuffer.wrap(version).getLong()) {
+                buffers.release(buffer.get());
+                return CONFLICT;
+            }
+
+            session = stripe.liveOrCreate(sessionID);
+
+            release(session.data);
+            session.data = buffer.get();
+            session.deadline = deadline();
+
+            return OK;
+
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public List<byte[]> readAllAndTouch(final byte[][] keys, final boolean[] touch) {
+        logger.debug("readAllAndTouch({} key(s))...", keys.length);
+
+        List<byte[]> results = new ArrayList<>(keys.length);
+        for(int index = 0; index < keys.length; index++) {
+            results.add(readAndTouch(keys[index], touch[index]).orElse(null));
+        }
+        return results;
+    }
+
+    public List<String> writeAllWithTimeout(final byte[][] keys, final byte[][] data) {
+        logger.debug("writeAllWithTimeout({} key(s))...", keys.length);
+
+        List<String> results = new ArrayList<>(keys.length);
+        for(int index = 0; index < keys.length; index++) {
+            results.add(writeWithTimeout(keys[index], data[index]));
+        }
+        return results;
+    }
+
+    public long delete(final Collection<String> sessionIDs) {
+        logger.debug("delete({} session(s))...", sessionIDs.size());
+
+        long removed = 0;
+        for(String sessionID : sessionIDs) {
+            Stripe stripe = stripeOf(sessionID);
+
+            stripe.lock.lock();
+            try {
+                StoredSession session = stripe.live(sessionID);
+                if(session != null) {
+                    stripe.remove(sessionID);
+                    removed++;
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return removed;
+    }
+
+    public long expire(final String sessionID) {
+        Stripe stripe = stripeOf(sessionID);
+
+        stripe.lock.lock();
+        try {
+            StoredSession session = stripe.live(sessionID);
+            if(session == null) {
+                return 0;
+            }
+            session.deadline = deadline();
+
+            // As with Redis, only the session data counts, not attributes left without it.
+            return (session.data == null) ? 0 : 1;
+
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public List<Long> expireAll(final List<String> sessionIDs) {
+        List<Long> results = new ArrayList<>(sessionIDs.size());
+        for(String sessionID : sessionIDs) {
+            results.add(expire(sessionID));
+        }
+        return results;
+    }
+
+    public List<byte[]> readFields(final byte[] key, final byte[][] fields, final boolean touch) {
+        logger.debug("readFields({} byte key, {} field(s), {})...", new Object[] { key.length, fields.length, touch });
+
+        String sessionID = SafeEncoder.encode(key);
+        Stripe stripe = stripeOf(sessionID);
+
+        List<byte[]> results = new ArrayList<>(fields.length);
+
+        stripe.lock.lock();
+        try {
+            StoredSession session = stripe.live(sessionID);
+            if(session != null && touch) {
+                session.deadline = deadline();
+            }
+            for(byte[] field : fields) {
+                ByteBuffer value = (session == null) ? null : session.fields.get(SafeEncoder.encode(field));
+                results.add((value == null) ? null : copy(value));
+            }
+            return results;
+
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public String writeFields(final byte[] key, final Map<byte[], byte[]> fields) {
+        logger.debug("writeFields({} byte key, {} field(s))...", key.length, fields.size());
+
+        Map<String, ByteBuffer> values = new HashMap<>();
+        for(Map.Entry<byte[], byte[]> field : fields.entrySet()) {
+            Optional<ByteBuffer> buffer = allocate(field.getValue());
+            if(!buffer.isPresent()) {
+                values.values().forEach(buffers::release);
+                return FULL;
+            }
+            values.put(SafeEncoder.encode(field.getKey()), buffer.get());
+        }
+
+        String sessionID = SafeEncoder.encode(key);
+        Stripe stripe = stripeOf(sessionID);
+
+        stripe.lock.lock();
+        try {
+            StoredSession session = stripe.liveOrCreate(sessionID);
+
+            values.forEach((name, value) -> release(session.fields.put(name, value)));
+            session.deadline = deadline();
+
+            return OK;
+
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public long deleteFields(final byte[] key, final byte[][] fields) {
+        logger.debug("deleteFields({} byte key, {} field(s))...", key.length, fields.length);
+
+        String sessionID = SafeEncoder.encode(key);
+        Stripe stripe = stripeOf(sessionID);
+
+        stripe.lock.lock();
+        try {
+            StoredSession session = stripe.live(sessionID);
+            if(session == null) {
+                return 0;
+            }
+
+            long removed = 0;
+            for(byte[] field : fields) {
+                ByteBuffer value = session.fields.remove(SafeEncoder.encode(field));
+                if(value != null) {
+                    buffers.release(value);
+                    removed++;
+                }
+            }
+
+            // Like a Redis key, a session with neither data nor attributes no longer exists.
+            if(session.data == null && session.fields.isEmpty()) {
+                stripe.remove(sessionID);
+            }
+            return removed;
+
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public void subscribe(final JedisPubSub listener, final String channel) {
+        logger.debug("subscribe({})...", channel);
+
+        // Every change is made in this process, and applied to any near-cache as it is made, so
+        // there are no other nodes to hear from. The subscription is held until interrupted.
+        listener.onSubscribe(channel, 1);
+        try {
+            Thread.sleep(Long.MAX_VALUE);
+
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+
+        } finally {
+            listener.onUnsubscribe(channel, 0);
+        }
+    }
+
+    long getReservedBytes() {
+        return buffers.getReserved();
+    }
+
+    private long expireIfDue(final String sessionID) {
+        Stripe stripe = stripeOf(sessionID);
+
+        stripe.lock.lock();
+        try {
+            // The sweep is not a use of the session, so must not make it the most recently used.
+            StoredSession session = stripe.peek(sessionID);
+            return (session == null) ? SessionTimerWheel.EXPIRED : session.deadline;
+
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    private Optional<ByteBuffer> allocate(final byte[] data) {
+        Optional<ByteBuffer> buffer = buffers.allocate(data.length);
+
+        int evicted = 0;
+        while(!buffer.isPresent() && evictOne()) {
+            evicted++;
+            buffer = buffers.allocate(data.length);
+        }
+
+        if(evicted > 0) {
+            logger.debug("{} session(s) evicted to make room for {} bytes...", evicted, data.length);
+            metrics.count(SessionMetrics.EVICTIONS, evicted);
+        }
+
+        buffer.ifPresent(allocated -> {
+            allocated.put(data);
+            allocated.flip();
+        });
+        return buffer;
+    }
+
+    private boolean evictOne() {
+        int start = victim.getAndIncrement();
+
+        for(int offset = 0; offset < stripes.length; offset++) {
+            Stripe stripe = stripes[(start + offset) & (stripes.length - 1)];
+
+            stripe.lock.lock();
+            try {
+                Iterator<String> eldest = stripe.sessions.keySet().iterator();
+                if(eldest.hasNext()) {
+                    stripe.remove(eldest.next());
+                    return true;
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return false;
+    }
+
+    private void release(final ByteBuffer buffer) {
+        if(buffer != null) {
+            buffers.release(buffer);
+        }
+    }
+
+    private long deadline() {
+        return System.nanoTime() + TimeUnit.SECONDS.toNanos(config.getSessionTimeoutInSeconds());
+    }
+
+    private Stripe stripeOf(final String sessionID) {
+        int hash = sessionID.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    private static byte[] copy(final ByteBuffer buffer) {
+        byte[] data = new byte[buffer.limit()];
+        buffer.duplicate().get(data);
+        return data;
+    }
+
+    private static final class StoredSession
+    {
+        private ByteBuffer data;
+
+        private final Map<String, ByteBuffer> fields = new HashMap<>();
+
+        private long deadline;
+    }
+
+    private final class Stripe
+    {
+        private final ReentrantLock lock = new ReentrantLock();
+
+        // In access order, so the eldest session is the least recently used.
+        private final Map<String, StoredSession> sessions = new LinkedHashMap<>(16, 0.75f, true);
+
+        // The same sessions, which can be looked up without changing their access order.
+        private final Map<String, StoredSession> index = new HashMap<>();
+
+        private StoredSession live(final String sessionID) {
+            return unlessExpired(sessionID, sessions.get(sessionID));
+        }
+
+        private StoredSession peek(final String sessionID) {
+            return unlessExpired(sessionID, index.get(sessionID));
+        }
+
+        private StoredSession unlessExpired(final String sessionID, final StoredSession session) {
+            if(session != null && session.deadline - System.nanoTime() <= 0) {
+                remove(sessionID);
+                return null;
+            }
+            return session;
+        }
+
+        private StoredSession liveOrCreate(final String sessionID) {
+            StoredSession session = live(sessionID);
+            if(session == null) {
+                session = new StoredSession();
+                session.deadline = deadline();
+
+                sessions.put(sessionID, session);
+                index.put(sessionID, session);
+                wheel.schedule(sessionID, session.deadline);
+            }
+            return session;
+        }
+
+        private void remove(final String sessionID) {
+            StoredSession session = sessions.remove(sessionID);
+            index.remove(sessionID);
+            if(session != null) {
+                release(session.data);
+                session.fields.values().forEach(buffers::release);
+            }
+        }
+    }
+}
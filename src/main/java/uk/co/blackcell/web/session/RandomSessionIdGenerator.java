@@ -0,0 +1,67 @@
+/**
+ * This is the default session identifier generator. Identifiers are random bytes drawn from a
+ * cryptographically strong generator, encoded as URL-safe Base64 without padding; 16 bytes
+ * (128 bits) encode to 22 characters, against the 36 of a UUID holding 122 random bits.
+ *
+ * Every thread has its own generator, so that bursts of new sessions do not contend on the
+ * single lock of a shared SecureRandom. Each is seeded once, when first used, with bytes read
+ * from a shared default SecureRandom (the non-blocking /dev/urandom), rather than seeding
+ * itself from the system entropy source, which may block.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+final class RandomSessionIdGenerator implements SessionIdGenerator
+{
+    private static final Logger logger = LoggerFactory.getLogger(RandomSessionIdGenerator.class);
+
+    // A per-instance generator, which (unlike the native default) shares no lock between instances.
+    private static final String ALGORITHM                   = "SHA1PRNG";
+    private static final int SEED_LENGTH                    = 32;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private static final SecureRandom SEED_SOURCE = new SecureRandom();
+
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(RandomSessionIdGenerator::createRandom);
+
+    private final int length;
+
+    RandomSessionIdGenerator(final int length) {
+        logger.debug("RandomSessionIdGenerator({}) constructor.", length);
+
+        this.length = length;
+    }
+
+    public String generate() {
+        byte[] identifier = new byte[length];
+        RANDOM.get().nextBytes(identifier);
+
+        return ENCODER.encodeToString(identifier);
+    }
+
+    private static SecureRandom createRandom() {
+        byte[] seed = new byte[SEED_LENGTH];
+        SEED_SOURCE.nextBytes(seed);
+
+        try {
+            // Seeding before the first use stops the generator from seeding itself.
+            SecureRandom random = SecureRandom.getInstance(ALGORITHM);
+            random.setSeed(seed);
+            return random;
+
+        } catch(NoSuchAlgorithmException ex) {
+            logger.warn("{} is not available, using the default SecureRandom: {}", ALGORITHM, ex.toString());
+            return new SecureRandom();
+        }
+    }
+}
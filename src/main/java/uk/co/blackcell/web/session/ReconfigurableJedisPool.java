@@ -0,0 +1,33 @@
+/**
+ * This is a Redis connection pool whose pool settings (sizes, waits, idle eviction) can be
+ * changed while it is in use, so that a reloaded configuration takes effect without a restart.
+ * Connections already open are kept; they are trimmed or added to as the new settings require.
+ * A connection may also be borrowed with a shorter wait than the configured maximum.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+class ReconfigurableJedisPool extends JedisPool implements SessionConnectionPool
+{
+    ReconfigurableJedisPool(final GenericObjectPoolConfig poolConfig, final String host, final int port,
+                            final int connectionTimeout, final int socketTimeout, final String password,
+                            final int database, final String clientName) {
+        super(poolConfig, host, port, connectionTimeout, socketTimeout, password, database, clientName);
+    }
+
+    public Jedis getResource(final long maxWaitMillis) {
+        Jedis resource = SessionConnectionPool.borrow(internalPool, maxWaitMillis);
+        resource.setDataSource(this);
+        return resource;
+    }
+
+    public void reconfigure(final GenericObjectPoolConfig poolConfig) {
+        SessionConnectionPool.reconfigure(internalPool, poolConfig);
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * This is a Redis Sentinel connection pool whose pool settings can be changed while it is in
+ * use. The underlying pool survives master failover, so the settings also survive failover.
+ * As with JedisSentinelPool itself, a connection still open to a master demoted by a failover
+ * is discarded when borrowed, rather than handed out to fail on its first write.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisSentinelPool;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+class ReconfigurableSentinelPool extends JedisSentinelPool implements SessionConnectionPool
+{
+    ReconfigurableSentinelPool(final String master, final Set<String> sentinels, final GenericObjectPoolConfig poolConfig,
+                               final int connectionTimeout, final int socketTimeout, final String password,
+                               final int database, final String clientName) {
+        super(master, sentinels, poolConfig, connectionTimeout, socketTimeout, password, database, clientName);
+    }
+
+    public Jedis getResource(final long maxWaitMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        long remaining = maxWaitMillis;
+
+        while(true) {
+            Jedis resource = SessionConnectionPool.borrow(internalPool, remaining);
+
+            Client client = resource.getClient();
+            if(getCurrentHostMaster().equals(new HostAndPort(client.getHost(), client.getPort()))) {
+                resource.setDataSource(this);
+                return resource;
+            }
+            returnBrokenResourceObject(resource);
+
+            // Further borrows share what remains of the wait, rather than each starting afresh.
+            remaining = Math.max(TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()), 0);
+        }
+    }
+
+    public void reconfigure(final GenericObjectPoolConfig poolConfig) {
+        SessionConnectionPool.reconfigure(internalPool, poolConfig);
+    }
+}
@@ -0,0 +1,358 @@
+/**
+ * This is the Redis Cluster session store. Each session is routed to the master owning its
+ * hash slot, and MOVED/ASK redirections (along with the slot cache refresh they trigger) are
+ * followed by the cluster client. Reading and touching a session is a single script, so costs
+ * one round trip; batches are split by hash slot, so no command ever spans slots.
+ *
+ * Scripts receive the keys of each session (in a batch) first, followed by their attribute
+ * keys in the same order, which share the session's slot. The scripts are shared with the
+ * single-master store.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.SafeEncoder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static uk.co.blackcell.web.session.constants.SessionConstants.SESSION_RESPONSE_CODE;
+
+class RedisClusterStore extends AbstractRedisStore
+{
+    private static final Logger logger = LoggerFactory.getLogger(RedisClusterStore.class);
+
+    private static final byte[] READ_FIELDS = SafeEncoder.encode(
+            "local data = redis.call('HMGET', KEYS[2], unpack(ARGV, 3)) "
+          + "if ARGV[2] == '1' then "
+          + "  redis.call('EXPIRE', KEYS[1], ARGV[1]) "
+          + "  redis.call('EXPIRE', KEYS[2], ARGV[1]) "
+          + "end "
+          + "return data");
+
+    private static final byte[] WRITE_FIELDS = SafeEncoder.encode(
+            "redis.call('HMSET', KEYS[2], unpack(ARGV, 2)) "
+          + "redis.call('EXPIRE', KEYS[2], ARGV[1]) "
+          + "redis.call('EXPIRE', KEYS[1], ARGV[1]) "
+          + "return 'OK'");
+
+    private static volatile RedisClusterStore instance;
+
+    private final JedisCluster cluster;
+
+    private RedisClusterStore(final Optional<String> credential) {
+        logger.debug("RedisClusterStore constructor.");
+
+        Set<HostAndPort> nodes = config.getClusterNodes();
+        logger.debug("Redis Cluster seed nodes: {}...", nodes);
+
+        this.cluster = new JedisCluster(nodes, config.getConnectionTimeoutInMillis(), config.getSocketTimeoutInMillis(),
+                config.getClusterMaxAttempts(), credential.orElse(null), createPoolConfig(config));
+
+        metrics.monitor(() -> cluster.getClusterNodes().values());
+    }
+
+    static synchronized RedisClusterStore getInstance(final Optional<String> credential) {
+        if(instance == null) {
+            instance = new RedisClusterStore(credential);
+        }
+        return instance;
+    }
+
+    static synchronized void shutdown(final long deadlineNanos) {
+        if(instance != null) {
+            logger.debug("Closing the Redis Cluster connection pools...");
+
+            awaitReturned(instance.cluster.getClusterNodes().values(), deadlineNanos);
+            try {
+                instance.cluster.close();
+
+            } catch(IOException ex) {
+                logger.warn("Redis Cluster connections could not be closed: " + ex.toString());
+            }
+            instance = null;
+        }
+    }
+
+    public void warmUp(final int connections) {
+        logger.debug("warmUp({})...", connections);
+
+        // Every node is warmed, as sessions (and so requests) are spread across all masters.
+        for(JedisPool pool : cluster.getClusterNodes().values()) {
+            List<Jedis> borrowed = new ArrayList<>(connections);
+            try {
+                for(int index = 0; index < connections; index++) {
+                    Jedis connection = pool.getResource();
+                    borrowed.add(connection);
+
+                    connection.ping();
+                }
+            } finally {
+                borrowed.forEach(Jedis::close);
+            }
+        }
+    }
+
+    public String ping() {
+        // Every known master and replica must be reachable.
+        for(JedisPool pool : cluster.getClusterNodes().values()) {
+            try (Jedis connection = pool.getResource()) {
+                long start = System.nanoTime();
+                String response = connection.ping();
+                metrics.time(SessionMetrics.ROUND_TRIP, start);
+
+                if(!AbstractSessionFacade.PING_RESPONSE_CODE.equalsIgnoreCase(response)) {
+                    return response;
+                }
+            }
+        }
+        return AbstractSessionFacade.PING_RESPONSE_CODE;
+    }
+
+    public Optional<byte[]> readAndTouch(final byte[] key, final boolean touch) {
+        logger.debug("readAndTouch({} byte key, {})...", key.length, touch);
+
+        long start = System.nanoTime();
+        try {
+            if(!touch) {
+                return Optional.ofNullable(cluster.get(key));
+            }
+            return Optional.ofNullable((byte[])cluster.eval(READ_AND_TOUCH.getSource(), 2, key, toAttributesKey(key), timeout()));
+
+        } finally {
+            metrics.time(SessionMetrics.ROUND_TRIP, start);
+        }
+    }
+
+    public String writeWithTimeout(final byte[] key, final byte[] data) {
+        logger.debug("writeWithTimeout({} byte key)...", key.length);
+
+        return writeAllWithTimeout(new byte[][] { key }, new byte[][] { data }).get(0);
+    }
+
+    public String writeIfVersion(final byte[] key, final byte[] version, final byte[] data) {
+        logger.debug("writeIfVersion({} byte key)...", key.length);
+
+        long start = System.nanoTime();
+        try {
+            return SafeEncoder.encode((byte[])cluster.eval(WRITE_IF_VERSION.getSource(), Arrays.asList(key, toAttributesKey(key)),
+                    toWriteIfVersionArgs(key, version, data)));
+
+        } finally {
+            metrics.time(SessionMetrics.ROUND_TRIP, start);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<byte[]> readAllAndTouch(final byte[][] keys, final boolean[] touch) {
+        logger.debug("readAllAndTouch({} key(s))...", keys.length);
+
+        byte[][] results = new byte[keys.length][];
+
+        forEachSlot(keys, indexes -> {
+            List<byte[]> slotKeys = withAttributesKeys(keys, indexes);
+            List<byte[]> args = new ArrayList<>(indexes.size() + 1);
+
+            args.add(timeout());
+            for(int index : indexes) {
+                args.add(touch[index] ? TOUCH : NO_TOUCH);
+            }
+
+            long start = System.nanoTime();
+            List<byte[]> data = (List<byte[]>)cluster.eval(READ_ALL_AND_TOUCH.getSource(), slotKeys, args);
+            metrics.time(SessionMetrics.ROUND_TRIP, start);
+
+            for(int position = 0; position < indexes.size(); position++) {
+                results[indexes.get(position)] = data.get(position);
+            }
+        });
+
+        return Arrays.asList(results);
+    }
+
+    public List<String> writeAllWithTimeout(final byte[][] keys, final byte[][] data) {
+        logger.debug("writeAllWithTimeout({} key(s))...", keys.length);
+
+        forEachSlot(keys, indexes -> {
+            List<byte[]> slotKeys = withAttributesKeys(keys, indexes);
+            List<byte[]> args = new ArrayList<>(indexes.size() + 1);
+
+            args.add(timeout());
+            for(int index : indexes) {
+                args.add(data[index]);
+            }
+
+            long start = System.nanoTime();
+            cluster.eval(WRITE_ALL_WITH_TIMEOUT.getSource(), slotKeys, args);
+            metrics.time(SessionMetrics.ROUND_TRIP, start);
+        });
+
+        announce(toSessionIDs(keys));
+
+        // A failed SETEX raises a script error, so every key reaching here was stored.
+        return new ArrayList<>(Collections.nCopies(keys.length, SESSION_RESPONSE_CODE));
+    }
+
+    public long delete(final Collection<String> sessionIDs) {
+        logger.debug("delete({} session(s))...", sessionIDs.size());
+
+        byte[][] keys = toKeys(new ArrayList<>(sessionIDs));
+
+        LongAdder deleted = new LongAdder();
+
+        forEachSlot(keys, indexes -> {
+            List<byte[]> slotKeys = withAttributesKeys(keys, indexes);
+
+            long start = System.nanoTime();
+            deleted.add(cluster.del(slotKeys.toArray(new byte[slotKeys.size()][])));
+            metrics.time(SessionMetrics.ROUND_TRIP, start);
+        });
+
+        announce(sessionIDs);
+        return deleted.sum();
+    }
+
+    public long expire(final String sessionID) {
+        return expireAll(Collections.singletonList(sessionID)).get(0);
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<Long> expireAll(final List<String> sessionIDs) {
+        byte[][] keys = toKeys(sessionIDs);
+
+        Long[] results = new Long[keys.length];
+
+        forEachSlot(keys, indexes -> {
+            List<byte[]> slotKeys = withAttributesKeys(keys, indexes);
+
+            long start = System.nanoTime();
+            List<Long> expired = (List<Long>)cluster.eval(EXPIRE_ALL.getSource(), slotKeys, Collections.singletonList(timeout()));
+            metrics.time(SessionMetrics.ROUND_TRIP, start);
+
+            for(int position = 0; position < indexes.size(); position++) {
+                results[indexes.get(position)] = expired.get(position);
+            }
+        });
+
+        return Arrays.asList(results);
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<byte[]> readFields(final byte[] key, final byte[][] fields, final boolean touch) {
+        logger.debug("readFields({} byte key, {} field(s), {})...", new Object[] { key.length, fields.length, touch });
+
+        List<byte[]> args = new ArrayList<>(fields.length + 2);
+        args.add(timeout());
+        args.add(touch ? TOUCH : NO_TOUCH);
+        args.addAll(Arrays.asList(fields));
+
+        long start = System.nanoTime();
+        try {
+            return (List<byte[]>)cluster.eval(READ_FIELDS, Arrays.asList(key, toAttributesKey(key)), args);
+
+        } finally {
+            metrics.time(SessionMetrics.ROUND_TRIP, start);
+        }
+    }
+
+    public String writeFields(final byte[] key, final Map<byte[], byte[]> fields) {
+        logger.debug("writeFields({} byte key, {} field(s))...", key.length, fields.size());
+
+        List<byte[]> args = new ArrayList<>(fields.size() * 2 + 1);
+        args.add(timeout());
+        fields.forEach((field, value) -> {
+            args.add(field);
+            args.add(value);
+        });
+
+        long start = System.nanoTime();
+        try {
+            return SafeEncoder.encode((byte[])cluster.eval(WRITE_FIELDS, Arrays.asList(key, toAttributesKey(key)), args));
+
+        } finally {
+            metrics.time(SessionMetrics.ROUND_TRIP, start);
+        }
+    }
+
+    public long deleteFields(final byte[] key, final byte[][] fields) {
+        logger.debug("deleteFields({} byte key, {} field(s))...", key.length, fields.length);
+
+        long start = System.nanoTime();
+        try {
+            return cluster.hdel(toAttributesKey(key), fields);
+
+        } finally {
+            metrics.time(SessionMetrics.ROUND_TRIP, start);
+        }
+    }
+
+    public void subscribe(final JedisPubSub listener, final String channel) {
+        logger.debug("subscribe({})...", channel);
+
+        // Cluster messages are broadcast to every node, so any node will do.
+        cluster.subscribe(listener, channel);
+    }
+
+    // A batch is announced as one message, as each publish is a round trip of its own.
+    private void announce(final Collection<String> sessionIDs) {
+        if(isAnnouncing() && !sessionIDs.isEmpty()) {
+            long start = System.nanoTime();
+            cluster.publish(getChannel(), SessionNearCache.toMessage(sessionIDs));
+            metrics.time(SessionMetrics.ROUND_TRIP, start);
+        }
+    }
+
+    // Groups key indexes by hash slot; once a batch is large enough, groups are sent concurrently
+    // on the session I/O threads (rather than a shared pool), under the caller's time budget.
+    private void forEachSlot(final byte[][] keys, final Consumer<List<Integer>> request) {
+        Map<Integer, List<Integer>> slots = new LinkedHashMap<>();
+        for(int index = 0; index < keys.length; index++) {
+            slots.computeIfAbsent(JedisClusterCRC16.getSlot(keys[index]), slot -> new ArrayList<>()).add(index);
+        }
+
+        if(slots.size() >= config.getBatchParallelThreshold()) {
+            AsyncSessionFacade.runAll(slots.values(), request);
+        } else {
+            slots.values().forEach(request);
+        }
+    }
+
+    private static List<byte[]> withAttributesKeys(final byte[][] keys, final List<Integer> indexes) {
+        List<byte[]> slotKeys = new ArrayList<>(indexes.size() * 2);
+        for(int index : indexes) {
+            slotKeys.add(keys[index]);
+        }
+        for(int index : indexes) {
+            slotKeys.add(toAttributesKey(keys[index]));
+        }
+        return slotKeys;
+    }
+
+    private static byte[][] toKeys(final List<String> sessionIDs) {
+        byte[][] keys = new byte[sessionIDs.size()][];
+        for(int index = 0; index < keys.length; index++) {
+            keys[index] = SafeEncoder.encode(sessionIDs.get(index));
+        }
+        return keys;
+    }
+}
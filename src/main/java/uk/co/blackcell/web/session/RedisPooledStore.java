@@ -0,0 +1,551 @@
+/**
+ * This is the single-master Redis session store, backed by a connection pool to either a
+ * standalone server, or the master discovered through Redis Sentinel. Reading, writing and
+ * refreshing the timeout of sessions are each a single script, run by its cached digest, and
+ * other commands issued together are pipelined; either way costing one network round trip.
+ *
+ * With Sentinel, reads which do not refresh the session timeout may be served by replicas.
+ * Sessions this node has just written (or removed) are read from the master until replication
+ * has had time to catch up, and a session missing from a replica may be looked for on the master.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.*;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.Pool;
+import redis.clients.util.SafeEncoder;
+import uk.co.blackcell.web.session.exceptions.SessionTechnicalException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static uk.co.blackcell.web.session.constants.SessionConstants.SESSION_BUDGET_EXHAUSTED;
+import static uk.co.blackcell.web.session.constants.SessionConstants.SESSION_RESPONSE_CODE;
+import static uk.co.blackcell.web.session.constants.SessionConstants.SESSION_STORE_CLOSED;
+
+class RedisPooledStore extends AbstractRedisStore
+{
+    private static final Logger logger = LoggerFactory.getLogger(RedisPooledStore.class);
+
+    private static final String WRONG_TYPE_ERROR            = "WRONGTYPE";
+    private static final String NO_SCRIPT_ERROR             = "NOSCRIPT";
+
+    private static volatile Pool<Jedis> pool;
+
+    private static volatile Optional<SentinelReplicaPools> replicas = Optional.empty();
+
+    // Once shut down, the store stays closed until the application is started again.
+    private static volatile boolean closed;
+
+    // Held, so that they can be unregistered when the store is shut down.
+    private static final Runnable reconfigureListener = RedisPooledStore::reconfigurePools;
+    private static final Supplier<Collection<? extends Pool<?>>> monitoredPools = RedisPooledStore::getPools;
+
+    // When this node last changed each session, for read-your-writes against replicas.
+    private static final Map<String, Long> changed = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        private final int maximumSize = SessionConfig.getInstance().getReplicaTrackingSize();
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > maximumSize;
+        }
+    };
+
+    // The credential new physical connections are authenticated with by the pool itself.
+    private static volatile Optional<String> poolCredential = Optional.empty();
+
+    private final Optional<String> credential;
+
+    RedisPooledStore(final Optional<String> credential) {
+        logger.debug("RedisPooledStore constructor.");
+
+        this.credential = credential;
+
+        createPool(credential);
+    }
+
+    private static synchronized void createPool(Optional<String> credential) {
+        if(closed) {
+            throw new IllegalStateException(SESSION_STORE_CLOSED);
+        }
+
+        if(pool == null) {
+            SessionConfig config = SessionConfig.getInstance();
+
+            logger.debug("Redis Sentinel enabled set to {}.", config.isSentinelEnabled());
+
+            // Standalone and Sentinel deployments share the same pool settings and timeouts.
+            GenericObjectPoolConfig poolConfig = createPoolConfig(config);
+
+            int connectionTimeout = config.getConnectionTimeoutInMillis();
+            int socketTimeout = config.getSocketTimeoutInMillis();
+
+            if (config.isSentinelEnabled()) {
+                ReconfigurableSentinelPool sentinelPool = new ReconfigurableSentinelPool(config.getMaster(), config.getSentinelList(), poolConfig,
+                        connectionTimeout, socketTimeout, credential.orElse(null), Protocol.DEFAULT_DATABASE, null);
+
+                HostAndPort hostAndPort = sentinelPool.getCurrentHostMaster();
+
+                String host = hostAndPort.getHost();
+                int port = hostAndPort.getPort();
+
+                logger.debug("Sentinel Master on Host:{}, Port:{}...", host, port);
+
+                pool = sentinelPool;
+
+                if(config.isReplicaReadEnabled()) {
+                    SentinelReplicaPools replicaPools = new SentinelReplicaPools(config.getMaster(), config.getSentinelList(),
+                            poolConfig, connectionTimeout, socketTimeout, credential);
+                    replicaPools.start(config.getReplicaDiscoveryInMillis());
+
+                    replicas = Optional.of(replicaPools);
+                }
+
+            } else {
+                String host = config.getRedisServerHost();
+                int port = config.getRedisServerPort();
+
+                pool = new ReconfigurableJedisPool(poolConfig, host, port, connectionTimeout, socketTimeout,
+                        credential.orElse(null), Protocol.DEFAULT_DATABASE, null);
+            }
+
+            poolCredential = credential;
+
+            // Pool settings may be changed live; timeouts and addresses are read on creation only.
+            config.addListener(reconfigureListener);
+            metrics.monitor(monitoredPools);
+        }
+    }
+
+    private static Collection<? extends Pool<?>> getPools() {
+        List<Pool<?>> pools = new ArrayList<>();
+
+        Pool<Jedis> current = pool;
+        if(current != null) {
+            pools.add(current);
+        }
+        replicas.ifPresent(replicaPools -> pools.addAll(replicaPools.getPools()));
+        return pools;
+    }
+
+    private static void reconfigurePools() {
+        GenericObjectPoolConfig poolConfig = createPoolConfig(SessionConfig.getInstance());
+
+        Pool<Jedis> current = pool;
+        if(current instanceof SessionConnectionPool) {
+            ((SessionConnectionPool)current).reconfigure(poolConfig);
+        }
+
+        replicas.ifPresent(replicaPools -> replicaPools.reconfigure(poolConfig));
+    }
+
+    static synchronized void open() {
+        closed = false;
+    }
+
+    static synchronized void shutdown(final long deadlineNanos) {
+        closed = true;
+
+        if(pool != null) {
+            logger.debug("Closing the Redis connection pool...");
+
+            SessionConfig.getInstance().removeListener(reconfigureListener);
+            metrics.unmonitor(monitoredPools);
+
+            // Connections still borrowed belong to operations in flight, which are left to finish.
+            awaitReturned(Collections.singletonList(pool), deadlineNanos);
+
+            pool.close();
+            replicas.ifPresent(SentinelReplicaPools::close);
+
+            pool = null;
+            replicas = Optional.empty();
+        }
+    }
+
+    Jedis getConnection() {
+        return getConnection(pool);
+    }
+
+    private Jedis getConnection(final Pool<Jedis> source) {
+        if(closed || source == null) {
+            throw new IllegalStateException(SESSION_STORE_CLOSED);
+        }
+        logger.debug("Obtain connection from {}...", source.getClass().getName());
+
+        // Within a time budget, the wait for a connection is bounded by what remains of it.
+        OptionalLong remaining = SessionDeadline.remainingMillis();
+        if(remaining.isPresent() && remaining.getAsLong() <= 0) {
+            throw new SessionTechnicalException(SESSION_BUDGET_EXHAUSTED);
+        }
+
+        long start = System.nanoTime();
+        Jedis resource = (remaining.isPresent() && source instanceof SessionConnectionPool)
+                ? ((SessionConnectionPool)source).getResource(Math.min(remaining.getAsLong(), config.getPoolMaxWaitInMillis()))
+                : source.getResource();
+        metrics.time(SessionMetrics.POOL_BORROW, start);
+
+        // Connections are authenticated by the pool when created; only a store holding
+        // a different credential to the pool needs to authenticate on borrow.
+        if (credential.isPresent() && !credential.equals(poolCredential)) {
+            resource.auth(credential.get());
+        }
+
+        return resource;
+    }
+
+    public String ping() {
+        try (Jedis connection = getConnection()) {
+            long start = System.nanoTime();
+            String response = connection.ping();
+            metrics.time(SessionMetrics.ROUND_TRIP, start);
+
+            return response;
+        }
+    }
+
+    public void warmUp(final int connections) {
+        logger.debug("warmUp({})...", connections);
+
+        // Connections are held together, so the pool has to create (and authenticate) each one.
+        List<Jedis> borrowed = new ArrayList<>(connections);
+        try {
+            for(int index = 0; index < connections; index++) {
+                Jedis connection = getConnection();
+                borrowed.add(connection);
+
+                connection.ping();
+            }
+        } finally {
+            borrowed.forEach(Jedis::close);
+        }
+    }
+
+    public Optional<byte[]> readAndTouch(final byte[] key, final boolean touch) {
+        logger.debug("readAndTouch({} byte key, {})...", key.length, touch);
+
+        // Timeouts can only be refreshed on the master, so only plain reads go to a replica.
+        if(!touch && isReplicaReadable(key)) {
+            Optional<Jedis> replica = getReplicaConnection();
+            if(replica.isPresent()) {
+                try (Jedis connection = replica.get()) {
+                    long start = System.nanoTime();
+                    byte[] data = connection.get(key);
+                    metrics.time(SessionMetrics.ROUND_TRIP, start);
+
+                    if(data != null || !config.isReplicaFallbackEnabled()) {
+                        return Optional.ofNullable(data);
+                    }
+                    logger.debug("Session not found on replica, reading from master...");
+
+                } catch(JedisException ex) {
+                    failedOnReplica(ex);
+                }
+            }
+        }
+
+        // The read and the refreshed timeout are a single script, costing one round trip.
+        try (Jedis connection = getConnection()) {
+            if(!touch) {
+                long start = System.nanoTime();
+                byte[] data = connection.get(key);
+                metrics.time(SessionMetrics.ROUND_TRIP, start);
+
+                return Optional.ofNullable(data);
+            }
+            return Optional.ofNullable((byte[])eval(connection, READ_AND_TOUCH, Arrays.asList(key, toAttributesKey(key)),
+                    Collections.singletonList(timeout())));
+        }
+    }
+
+    public String writeWithTimeout(final byte[] key, final byte[] data) {
+        logger.debug("writeWithTimeout({} byte key)...", key.length);
+        changed(key);
+
+        return writeAllWithTimeout(new byte[][] { key }, new byte[][] { data }).get(0);
+    }
+
+    public String writeIfVersion(final byte[] key, final byte[] version, final byte[] data) {
+        logger.debug("writeIfVersion({} byte key)...", key.length);
+        changed(key);
+
+        // The versions are compared and the session written by a single script, in one round trip.
+        try (Jedis connection = getConnection()) {
+            return SafeEncoder.encode((byte[])eval(connection, WRITE_IF_VERSION, Arrays.asList(key, toAttributesKey(key)),
+                    toWriteIfVersionArgs(key, version, data)));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<byte[]> readAllAndTouch(final byte[][] keys, final boolean[] touch) {
+        logger.debug("readAllAndTouch({} key(s))...", keys.length);
+        if(keys.length == 0) {
+            return new ArrayList<>();
+        }
+
+        if(isReplicaReadable(keys, touch)) {
+            Optional<Jedis> replica = getReplicaConnection();
+            if(replica.isPresent()) {
+                try (Jedis connection = replica.get()) {
+                    long start = System.nanoTime();
+                    List<byte[]> data = connection.mget(keys);
+                    metrics.time(SessionMetrics.ROUND_TRIP, start);
+
+                    if(!data.contains(null) || !config.isReplicaFallbackEnabled()) {
+                        return data;
+                    }
+                    logger.debug("Sessions not found on replica, reading from master...");
+
+                } catch(JedisException ex) {
+                    failedOnReplica(ex);
+                }
+            }
+        }
+
+        // Every session is read, and those due have their timeout refreshed, by a single script.
+        List<byte[]> args = new ArrayList<>(keys.length + 1);
+        args.add(timeout());
+        for(boolean due : touch) {
+            args.add(due ? TOUCH : NO_TOUCH);
+        }
+
+        try (Jedis connection = getConnection()) {
+            return (List<byte[]>)eval(connection, READ_ALL_AND_TOUCH, withAttributesKeys(keys), args);
+        }
+    }
+
+    public List<String> writeAllWithTimeout(final byte[][] keys, final byte[][] data) {
+        logger.debug("writeAllWithTimeout({} key(s))...", keys.length);
+        for(byte[] key : keys) {
+            changed(key);
+        }
+
+        // SETEX stores each value and its expiry atomically, so a key never exists without a TTL.
+        List<byte[]> args = new ArrayList<>(keys.length + 3);
+        args.add(timeout());
+        args.addAll(Arrays.asList(data));
+
+        if(isAnnouncing()) {
+            args.add(SafeEncoder.encode(getChannel()));
+            args.add(SafeEncoder.encode(SessionNearCache.toMessage(toSessionIDs(keys))));
+        }
+
+        try (Jedis connection = getConnection()) {
+            eval(connection, WRITE_ALL_WITH_TIMEOUT, withAttributesKeys(keys), args);
+        }
+
+        // A failed SETEX raises a script error, so every key reaching here was stored.
+        return new ArrayList<>(Collections.nCopies(keys.length, SESSION_RESPONSE_CODE));
+    }
+
+    public long delete(final Collection<String> sessionIDs) {
+        logger.debug("delete({} session(s))...", sessionIDs.size());
+        List<byte[]> keys = new ArrayList<>(sessionIDs.size() * 2);
+        for(String sessionID : sessionIDs) {
+            byte[] key = SafeEncoder.encode(sessionID);
+            changed(key);
+
+            keys.add(key);
+            keys.add(toAttributesKey(key));
+        }
+
+        try (Jedis connection = getConnection()) {
+            Pipeline pipeline = connection.pipelined();
+
+            // A single multi-key DEL removes every session (and its attributes) in the batch.
+            Response<Long> response = pipeline.del(keys.toArray(new byte[keys.size()][]));
+            announce(pipeline, sessionIDs);
+
+            sync(pipeline);
+
+            return response.get();
+        }
+    }
+
+    public long expire(final String sessionID) {
+        return expireAll(Collections.singletonList(sessionID)).get(0);
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<Long> expireAll(final List<String> sessionIDs) {
+        if(sessionIDs.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        byte[][] keys = new byte[sessionIDs.size()][];
+        for(int index = 0; index < keys.length; index++) {
+            keys[index] = SafeEncoder.encode(sessionIDs.get(index));
+        }
+
+        try (Jedis connection = getConnection()) {
+            return (List<Long>)eval(connection, EXPIRE_ALL, withAttributesKeys(keys), Collections.singletonList(timeout()));
+        }
+    }
+
+    public List<byte[]> readFields(final byte[] key, final byte[][] fields, final boolean touch) {
+        logger.debug("readFields({} byte key, {} field(s), {})...", new Object[] { key.length, fields.length, touch });
+
+        byte[] attributesKey = toAttributesKey(key);
+
+        try (Jedis connection = getConnection()) {
+            Pipeline pipeline = connection.pipelined();
+
+            Response<List<byte[]>> data = pipeline.hmget(attributesKey, fields);
+            if(touch) {
+                pipeline.expire(key, getTimeout());
+                pipeline.expire(attributesKey, getTimeout());
+            }
+
+            sync(pipeline);
+
+            return data.get();
+        }
+    }
+
+    public String writeFields(final byte[] key, final Map<byte[], byte[]> fields) {
+        logger.debug("writeFields({} byte key, {} field(s))...", key.length, fields.size());
+        changed(key);
+
+        byte[] attributesKey = toAttributesKey(key);
+
+        // Writing an attribute is activity, so the timeout of the whole session is refreshed.
+        try (Jedis connection = getConnection()) {
+            Pipeline pipeline = connection.pipelined();
+
+            Response<String> response = pipeline.hmset(attributesKey, fields);
+            pipeline.expire(attributesKey, getTimeout());
+            pipeline.expire(key, getTimeout());
+
+            sync(pipeline);
+
+            return response.get();
+        }
+    }
+
+    public long deleteFields(final byte[] key, final byte[][] fields) {
+        logger.debug("deleteFields({} byte key, {} field(s))...", key.length, fields.length);
+        changed(key);
+
+        try (Jedis connection = getConnection()) {
+            Pipeline pipeline = connection.pipelined();
+
+            Response<Long> response = pipeline.hdel(toAttributesKey(key), fields);
+
+            sync(pipeline);
+
+            return response.get();
+        }
+    }
+
+    public void subscribe(final JedisPubSub listener, final String channel) {
+        logger.debug("subscribe({})...", channel);
+
+        // Blocks for as long as the subscription is held.
+        try (Jedis connection = getConnection()) {
+            connection.subscribe(listener, channel);
+        }
+    }
+
+    private Optional<Jedis> getReplicaConnection() {
+        Optional<JedisPool> replica = replicas.flatMap(SentinelReplicaPools::next);
+        try {
+            return replica.map(this::getConnection);
+
+        } catch(JedisException ex) {
+            logger.warn("Replica connection could not be obtained, reading from master: " + ex.toString());
+            return Optional.empty();
+        }
+    }
+
+    // A replica which is loading, has lost its master, or refuses the command is passed over for
+    // the master; an error the master would raise too (such as a wrong type) is not retried.
+    private static void failedOnReplica(final JedisException ex) {
+        String message = String.valueOf(ex.getMessage());
+        if(ex instanceof JedisDataException && (message.startsWith(WRONG_TYPE_ERROR) || message.startsWith(NO_SCRIPT_ERROR))) {
+            throw ex;
+        }
+        logger.warn("Replica could not be read, reading from master: " + ex.toString());
+    }
+
+    private boolean isReplicaReadable(final byte[] key) {
+        if(!replicas.isPresent()) {
+            return false;
+        }
+
+        long window = TimeUnit.MILLISECONDS.toNanos(config.getReplicaReadYourWritesInMillis());
+        if(window == 0) {
+            return true;
+        }
+
+        Long last;
+        synchronized (changed) {
+            last = changed.get(SafeEncoder.encode(key));
+        }
+        return last == null || System.nanoTime() - last >= window;
+    }
+
+    private boolean isReplicaReadable(final byte[][] keys, final boolean[] touch) {
+        for(int index = 0; index < keys.length; index++) {
+            if(touch[index] || !isReplicaReadable(keys[index])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void changed(final byte[] key) {
+        if(replicas.isPresent() && config.getReplicaReadYourWritesInMillis() > 0) {
+            long now = System.nanoTime();
+            synchronized (changed) {
+                changed.put(SafeEncoder.encode(key), now);
+            }
+        }
+    }
+
+    // A batch is announced as one message, listing every session in it.
+    private void announce(final Pipeline pipeline, final Collection<String> sessionIDs) {
+        if(isAnnouncing() && !sessionIDs.isEmpty()) {
+            pipeline.publish(getChannel(), SessionNearCache.toMessage(sessionIDs));
+        }
+    }
+
+    // Scripts are run by their digest, and only sent in full when Redis does not have them cached.
+    private static Object eval(final Jedis connection, final RedisScript script, final List<byte[]> keys, final List<byte[]> args) {
+        long start = System.nanoTime();
+        try {
+            return connection.evalsha(script.getSha(), keys, args);
+
+        } catch(JedisDataException ex) {
+            if(!String.valueOf(ex.getMessage()).startsWith(NO_SCRIPT_ERROR)) {
+                throw ex;
+            }
+            logger.debug("Script is not cached by Redis, sending it in full...");
+            return connection.eval(script.getSource(), keys, args);
+
+        } finally {
+            metrics.time(SessionMetrics.ROUND_TRIP, start);
+        }
+    }
+
+    private static void sync(final Pipeline pipeline) {
+        long start = System.nanoTime();
+        pipeline.sync();
+        metrics.time(SessionMetrics.ROUND_TRIP, start);
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * This is a Redis (Lua) script, held with its SHA-1 digest. Redis caches every script it runs,
+ * so a script need only be sent in full when Redis reports it does not have it (after a
+ * restart or failover); otherwise it is run by its digest.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import redis.clients.util.SafeEncoder;
+import uk.co.blackcell.web.session.exceptions.SessionTechnicalException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+final class RedisScript
+{
+    private static final String DIGEST_ALGORITHM            = "SHA-1";
+    private static final char[] HEX_DIGITS                  = "0123456789abcdef".toCharArray();
+
+    private final byte[] source;
+    private final byte[] sha;
+
+    RedisScript(final String source) {
+        this.source = SafeEncoder.encode(source);
+        this.sha = SafeEncoder.encode(toHex(digest(this.source)));
+    }
+
+    byte[] getSource() {
+        return source;
+    }
+
+    byte[] getSha() {
+        return sha;
+    }
+
+    private static byte[] digest(final byte[] source) {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM).digest(source);
+
+        } catch(NoSuchAlgorithmException ex) {
+            throw new SessionTechnicalException(ex);
+        }
+    }
+
+    private static String toHex(final byte[] digest) {
+        char[] hex = new char[digest.length * 2];
+        for(int index = 0; index < digest.length; index++) {
+            hex[index * 2] = HEX_DIGITS[(digest[index] >> 4) & 0x0F];
+            hex[index * 2 + 1] = HEX_DIGITS[digest[index] & 0x0F];
+        }
+        return new String(hex);
+    }
+}
@@ -1,7 +1,9 @@
 /**
  * This is the Redis (Encrypted) session management implementation. It uses industry standard
- * encryption, with a default key length of 32 byte(s) and initialisation vector of 16 byte(s).
- * Data encoding is supported for plain text encryption, with data padding.
+ * encryption, with a default key length of 32 byte(s) and a random initialisation vector of
+ * 16 byte(s) for each value. Data encoding is supported for plain text encryption, with data
+ * padding. Each value records the key it was encrypted with, and a value read with any key
+ * but the current one is re-encrypted with the current key when it is next written.
  *
  * @author James Bishop
  * @version 1.0
@@ -10,199 +12,71 @@ package uk.co.blackcell.web.session;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import redis.clients.jedis.Jedis;
-import sun.misc.BASE64Decoder;
-import sun.misc.BASE64Encoder;
-import uk.co.blackcell.web.session.exceptions.SessionAuthenticationFailedException;
-import uk.co.blackcell.web.session.exceptions.SessionNotFoundException;
-import uk.co.blackcell.web.session.exceptions.SessionNotPersistedException;
-import uk.co.blackcell.web.session.exceptions.SessionTechnicalException;
-
-import javax.crypto.BadPaddingException;
-import javax.crypto.Cipher;
-import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.NoSuchPaddingException;
+
 import javax.crypto.spec.IvParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
-import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.security.InvalidAlgorithmParameterException;
-import java.security.InvalidKeyException;
-import java.security.Key;
-import java.security.NoSuchAlgorithmException;
-import java.security.spec.InvalidKeySpecException;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
 import java.util.Optional;
-
-import static uk.co.blackcell.web.session.constants.SessionConstants.*;
+import java.util.zip.DataFormatException;
 
 class RedisSessionManagerEncryptedImpl extends AbstractSessionFacade implements ISessionFacade
 {
     private static final Logger logger = LoggerFactory.getLogger(RedisSessionManagerEncryptedImpl.class);
 
-    private static final String SECRET_KEY_ALGORITHM        = "AES";
-    private static final String CIPHER_IMPLEMENTATION       = "AES/CBC/PKCS5PADDING";
-
-    private static final String SUPPORTED_ENCODING          = "UTF-8";
-
-    private static final String INITIALISATION_VECTOR;
-    private static final String ENCRYPTED_SECRET_KEY;
-
-    static {
-        logger.debug("<Static> initialising vectors and keys...");
-
-        // Define our 16-byte initialisation vector data.
-        byte[] vectorInitialisationByteArray = {
-                0x32, 0x43, 0x18, 0x0A, 0x07, 0x64, 0x75, 0x0B,
-                0x27, 0x65, 0x51, 0x72, 0x13, 0x0F, 0x39, 0x19
-        };
+    // The fixed 16-byte initialisation vector, used by values written before keys were recorded.
+    private static final IvParameterSpec LEGACY_VECTOR = new IvParameterSpec(new byte[] {
+            0x32, 0x43, 0x18, 0x0A, 0x07, 0x64, 0x75, 0x0B,
+            0x27, 0x65, 0x51, 0x72, 0x13, 0x0F, 0x39, 0x19
+    });
 
-        // Load and population our initialisation vector.
-        INITIALISATION_VECTOR = new String(vectorInitialisationByteArray);
-
-        // Retrieve the session encryption keys from config.
-        ENCRYPTED_SECRET_KEY = SessionConfig.getInstance().getSessionEncryptionKey();
-    }
-
-    RedisSessionManagerEncryptedImpl(Optional<String> authenticate) {
-        super(authenticate);
+    RedisSessionManagerEncryptedImpl(final SessionStore store) {
+        super(store);
         logger.debug("RedisSessionManagerEncryptedImpl constructor.");
     }
 
-    public void ping(final String sessionID) {
-        super.ping(sessionID);
-    }
-
-    public String getData(final String sessionID) throws SessionNotFoundException {
-        logger.debug("getData({})...", sessionID);
-        try {
-            Jedis connection = getConnection();
+    byte[] encode(final byte[] data) throws GeneralSecurityException {
+        Optional<byte[]> compressed = COMPRESSOR.compress(data);
 
-            Optional<String> encrypted = Optional.ofNullable(connection.get(sessionID));
-
-            updateTimeoutInterval(sessionID);
-
-            connection.close();
-
-            if (!encrypted.isPresent() || encrypted.get().isEmpty()) {
-                logger.debug("No data could be retrieved from session: [{}]...", sessionID);
-                throw new SessionNotFoundException(SESSION_NOT_FOUND_ERROR);
-            }
-
-            return decrypt(encrypted.get());
-
-        } catch(SessionAuthenticationFailedException ex) {
-            logger.error("Session failed to authenticate properly: " + ex.toString());
-            throw new SessionTechnicalException(ex);
-
-        } catch(NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException | InvalidKeySpecException ex) {
-            logger.error("A technical error was raised: " + ex.toString());
-            throw new SessionTechnicalException(ex);
-
-        } catch(InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException ex) {
-            logger.error("A technical error was raised: " + ex.toString());
-            throw new SessionTechnicalException(ex);
-
-        } catch(IOException ex) {
-            logger.error("A technical error was raised: " + ex.toString());
-            throw new SessionTechnicalException(ex);
+        byte flags = SessionEnvelope.FLAG_ENCRYPTED;
+        if(compressed.isPresent()) {
+            flags |= SessionEnvelope.FLAG_COMPRESSED;
         }
-    }
-
-    public void setData(final String sessionID, final String data) throws SessionNotPersistedException {
-        logger.debug("setData({})...", sessionID);
 
-        try {
-            Jedis connection = getConnection();
+        SessionKeyring keyring = SessionKeyring.getInstance();
+        IvParameterSpec vector = SessionKeyring.nextVector();
 
-            String encrypted = encrypt(data);
+        byte[] encrypted = keyring.getCurrent().encrypt(compressed.orElse(data), vector);
 
-            String response = connection.set(sessionID, encrypted);
-            logger.debug("Session response: [{}]", response);
-
-            if(!response.equalsIgnoreCase(SESSION_RESPONSE_CODE)) {
-                logger.warn("Session response was not successful, warning raised...");
-                throw new SessionNotPersistedException(SESSION_FAILED_TO_PERSIST);
-            }
-
-            updateTimeoutInterval(sessionID);
-
-            connection.close();
-
-        } catch(SessionAuthenticationFailedException ex) {
-            logger.error("Session failed to authenticate properly: " + ex.toString());
-            throw new SessionTechnicalException(ex);
-
-        } catch(UnsupportedEncodingException | NoSuchAlgorithmException | NoSuchPaddingException ex) {
-            logger.warn("Data could not be persisted to the current store: [{}]", sessionID);
-            throw new SessionTechnicalException(ex);
-
-        } catch(InvalidKeyException | InvalidAlgorithmParameterException | IllegalBlockSizeException ex) {
-            logger.warn("Data could not be persisted to the current store: [{}]", sessionID);
-            throw new SessionTechnicalException(ex);
-
-        } catch(BadPaddingException | InvalidKeySpecException ex) {
-            logger.warn("Data could not be persisted to the current store: [{}]", sessionID);
-            throw new SessionTechnicalException(ex);
-        }
+        return SessionEnvelope.wrap(flags, keyring.getCurrentKeyId(), vector.getIV(), encrypted);
     }
 
-    public void invalidate(final String sessionID) {
-        logger.debug("invalidate({})...", sessionID);
-        try {
-            Jedis connection = getConnection();
+    byte[] decode(final byte[] stored) throws GeneralSecurityException, DataFormatException {
+        SessionKeyring keyring = SessionKeyring.getInstance();
 
-            Long response = connection.del(sessionID);
-            logger.debug("response: ({})...", response);
+        if(SessionEnvelope.isKeyed(stored)) {
+            int offset = SessionEnvelope.HEADER_LENGTH + SessionEnvelope.KEY_ID_LENGTH;
+            IvParameterSpec vector = new IvParameterSpec(stored, offset, SessionCipher.VECTOR_LENGTH);
 
-            connection.close();
+            offset += SessionCipher.VECTOR_LENGTH;
+            byte[] data = keyring.get(SessionEnvelope.getKeyId(stored)).decrypt(stored, offset, stored.length - offset, vector);
 
-        } catch(SessionAuthenticationFailedException ex) {
-            logger.error("Session failed to authenticate properly: " + ex.toString());
-            throw new SessionTechnicalException(ex);
+            return (SessionEnvelope.hasFlag(stored, SessionEnvelope.FLAG_COMPRESSED)) ? COMPRESSOR.decompress(data) : data;
         }
-    }
-
-    private String encrypt(final String data)
-            throws UnsupportedEncodingException, NoSuchAlgorithmException, NoSuchPaddingException,
-            InvalidKeyException, InvalidAlgorithmParameterException, IllegalBlockSizeException,
-            BadPaddingException, InvalidKeySpecException {
-
-        logger.debug("encrypt(String)...");
 
-        IvParameterSpec ivSpec = new IvParameterSpec(INITIALISATION_VECTOR.getBytes(SUPPORTED_ENCODING));
+        SessionCipher legacy = keyring.get(SessionKeyring.LEGACY_KEY_ID);
 
-        Key key = generateKey();
-        Cipher cipher = Cipher.getInstance(CIPHER_IMPLEMENTATION);
-        cipher.init(Cipher.ENCRYPT_MODE, key, ivSpec);
+        if(SessionEnvelope.isWrapped(stored)) {
+            byte[] data = legacy.decrypt(stored, SessionEnvelope.HEADER_LENGTH, stored.length - SessionEnvelope.HEADER_LENGTH, LEGACY_VECTOR);
 
-        byte[] encryptedData = cipher.doFinal(data.getBytes());
-
-        return new BASE64Encoder().encode(encryptedData);
-    }
-
-    private String decrypt(final String encrypted)
-            throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException,
-            InvalidAlgorithmParameterException, IOException, IllegalBlockSizeException,
-            BadPaddingException, InvalidKeySpecException {
-
-        logger.debug("decrypt(String)...");
-
-        IvParameterSpec ivSpec = new IvParameterSpec(INITIALISATION_VECTOR.getBytes(SUPPORTED_ENCODING));
-
-        Key key = generateKey();
-        Cipher cipher = Cipher.getInstance(CIPHER_IMPLEMENTATION);
-        cipher.init(Cipher.DECRYPT_MODE, key, ivSpec);
-
-        byte[] decodedData = new BASE64Decoder().decodeBuffer(encrypted);
-
-        byte[] decryptedData = cipher.doFinal(decodedData);
+            return (SessionEnvelope.hasFlag(stored, SessionEnvelope.FLAG_COMPRESSED)) ? COMPRESSOR.decompress(data) : data;
+        }
 
-        return new String(decryptedData);
+        // Sessions written before the binary format was introduced are Base64 encoded text.
+        logger.debug("Decoding legacy (Base64) session data...");
+        return legacy.decrypt(Base64.getMimeDecoder().decode(stored), LEGACY_VECTOR);
     }
 
-    private Key generateKey() throws UnsupportedEncodingException {
-        logger.debug("generateKey()...");
-
-        return new SecretKeySpec(ENCRYPTED_SECRET_KEY.getBytes(SUPPORTED_ENCODING), SECRET_KEY_ALGORITHM);
+    boolean isCurrent(final byte[] stored) {
+        return SessionEnvelope.isKeyed(stored) && SessionKeyring.getInstance().isCurrent(SessionEnvelope.getKeyId(stored));
     }
 }
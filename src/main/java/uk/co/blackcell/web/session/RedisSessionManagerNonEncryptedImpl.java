@@ -9,82 +9,40 @@ package uk.co.blackcell.web.session;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import redis.clients.jedis.Jedis;
-import uk.co.blackcell.web.session.exceptions.SessionAuthenticationFailedException;
-import uk.co.blackcell.web.session.exceptions.SessionNotFoundException;
-import uk.co.blackcell.web.session.exceptions.SessionNotPersistedException;
-import uk.co.blackcell.web.session.exceptions.SessionTechnicalException;
 
 import java.util.Optional;
-
-import static uk.co.blackcell.web.session.constants.SessionConstants.SESSION_NOT_FOUND_ERROR;
+import java.util.zip.DataFormatException;
 
 class RedisSessionManagerNonEncryptedImpl extends AbstractSessionFacade implements ISessionFacade
 {
     private static final Logger logger = LoggerFactory.getLogger(RedisSessionManagerNonEncryptedImpl.class);
 
-    RedisSessionManagerNonEncryptedImpl(Optional<String> authenticate) {
-        super(authenticate);
+    RedisSessionManagerNonEncryptedImpl(final SessionStore store) {
+        super(store);
         logger.debug("RedisSessionManagerNonEncryptedImpl() constructor...");
     }
 
-    public void ping(final String sessionID) {
-        super.ping(sessionID);
-    }
-
-    public String getData(final String sessionID) throws SessionNotFoundException {
-        logger.debug("getData({})...", sessionID);
-        try {
-            Jedis connection = getConnection();
-
-            Optional<String> data = Optional.ofNullable(connection.get(sessionID));
-
-            updateTimeoutInterval(sessionID);
-
-            connection.close();
-
-            if (!data.isPresent() || data.get().isEmpty()) {
-                logger.debug("No data could be retrieved from session: [{}]...", sessionID);
-                throw new SessionNotFoundException(SESSION_NOT_FOUND_ERROR);
-            }
-
-            return data.get();
-
-        } catch(SessionAuthenticationFailedException ex) {
-            logger.error("Session failed to authenticate properly: " + ex.toString());
-            throw new SessionTechnicalException(ex);
+    byte[] encode(final byte[] data) {
+        Optional<byte[]> compressed = COMPRESSOR.compress(data);
+        if(compressed.isPresent()) {
+            return SessionEnvelope.wrap(SessionEnvelope.FLAG_COMPRESSED, compressed.get());
         }
-    }
-
-    public void setData(final String sessionID, final String data)throws SessionNotPersistedException {
-        logger.debug("setData({})...", sessionID);
-        try {
-            Jedis connection = getConnection();
-
-            connection.set(sessionID, data);
-
-            updateTimeoutInterval(sessionID);
 
-            connection.close();
-
-        } catch(SessionAuthenticationFailedException ex) {
-            logger.error("Session failed to authenticate properly: " + ex.toString());
-            throw new SessionTechnicalException(ex);
+        // Data is stored as-is, unless it could be mistaken for an enveloped value.
+        if(data.length > 0 && data[0] == SessionEnvelope.MARKER) {
+            return SessionEnvelope.wrap(SessionEnvelope.FLAG_NONE, data);
         }
+        return data;
     }
 
-    public void invalidate(final String sessionID) {
-        logger.debug("invalidate({})...", sessionID);
-        try {
-            Jedis connection = getConnection();
-
-            connection.del(sessionID);
-
-            connection.close();
+    byte[] decode(final byte[] stored) throws DataFormatException {
+        if(!SessionEnvelope.isWrapped(stored)) {
+            return stored;
+        }
 
-        } catch(SessionAuthenticationFailedException ex) {
-            logger.error("Session failed to authenticate properly: " + ex.toString());
-            throw new SessionTechnicalException(ex);
+        if(SessionEnvelope.hasFlag(stored, SessionEnvelope.FLAG_COMPRESSED)) {
+            return COMPRESSOR.decompress(stored, SessionEnvelope.HEADER_LENGTH, stored.length - SessionEnvelope.HEADER_LENGTH);
         }
+        return SessionEnvelope.unwrap(stored);
     }
 }
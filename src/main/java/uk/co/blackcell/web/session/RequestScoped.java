@@ -0,0 +1,24 @@
+/**
+ * This is the request-scoped session annotation, with which a Play controller (or action)
+ * is given a request session, obtained through RequestSession.current() and written back
+ * once the action completes.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import play.mvc.With;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+@With(RequestScopedSessionAction.class)
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RequestScoped
+{
+    String keyPath() default "";
+}
@@ -0,0 +1,48 @@
+/**
+ * This is the request-scoped session action, which composes @RequestScoped Play actions. The
+ * session cookie is resolved once, the request session is made available to the action, and
+ * once the action has produced its result, any change is written back before it is returned.
+ * An action which fails has its changes discarded.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import play.mvc.Action;
+import play.mvc.Http;
+import play.mvc.Result;
+
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+
+public class RequestScopedSessionAction extends Action<RequestScoped>
+{
+    private static final Logger logger = LoggerFactory.getLogger(RequestScopedSessionAction.class);
+
+    public CompletionStage<Result> call(final Http.Context context) {
+        Optional<String> sessionID = Optional.ofNullable(context.request().cookie(SessionConfig.getInstance().getCookieName()))
+                .map(Http.Cookie::value)
+                .filter(value -> !value.isEmpty());
+
+        logger.debug("call({})...", sessionID);
+
+        // The facade is built once per key path and shared, so this costs no more than a lookup.
+        ISessionFacade session = SessionFactory.getFactory().getSession(getKeyPath());
+
+        RequestSession requestSession = new RequestSession(session, sessionID);
+        context.args.put(RequestSession.CONTEXT_KEY, requestSession);
+
+        // The write completes before the result is returned, so the next request will see it.
+        return delegate.call(context).thenCompose(result ->
+                requestSession.writeBack(new AsyncSessionFacade(session), context.response()).thenApply(done -> result));
+    }
+
+    private Optional<String> getKeyPath() {
+        return Optional.ofNullable(configuration)
+                .map(RequestScoped::keyPath)
+                .filter(keyPath -> !keyPath.isEmpty());
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * This is the request session, the session of a single Play request. The session identified by
+ * the request's cookie is loaded from the store at most once, and only if the action reads it.
+ * Changes are held until the action completes, then written back once, and only if the data
+ * actually changed, so a request costs at most one read and one write, and often neither.
+ *
+ * A request session belongs to one request, and must not be shared between threads.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import play.mvc.Http;
+import uk.co.blackcell.web.session.exceptions.SessionNotFoundException;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+public final class RequestSession
+{
+    private static final Logger logger = LoggerFactory.getLogger(RequestSession.class);
+
+    static final String CONTEXT_KEY = RequestSession.class.getName();
+
+    private final ISessionFacade session;
+
+    private Optional<String> sessionID;
+
+    // An invalidated session is removed when the request completes.
+    private Optional<String> invalidatedID = Optional.empty();
+
+    private Optional<String> data = Optional.empty();
+
+    private boolean loaded;
+    private boolean modified;
+
+    RequestSession(final ISessionFacade session, final Optional<String> sessionID) {
+        this.session = session;
+        this.sessionID = sessionID;
+    }
+
+    public static RequestSession current() {
+        return of(Http.Context.current());
+    }
+
+    public static RequestSession of(final Http.Context context) {
+        Object session = context.args.get(CONTEXT_KEY);
+        if(session == null) {
+            throw new IllegalStateException("No request session, the action must be annotated with @RequestScoped");
+        }
+        return (RequestSession)session;
+    }
+
+    public Optional<String> getId() {
+        return sessionID;
+    }
+
+    public Optional<String> getData() {
+        if(!loaded && sessionID.isPresent()) {
+            try {
+                data = Optional.of(session.getData(sessionID.get()));
+
+            } catch(SessionNotFoundException ex) {
+                logger.debug("Session [{}] has expired, or never existed...", sessionID.get());
+            }
+        }
+        loaded = true;
+
+        return data;
+    }
+
+    public void setData(final String data) {
+        // Data which has not been read is not known to be unchanged, so is always written.
+        modified |= !(loaded && Optional.of(data).equals(this.data));
+
+        this.data = Optional.of(data);
+        loaded = true;
+    }
+
+    public void invalidate() {
+        sessionID.ifPresent(invalidated -> invalidatedID = Optional.of(invalidated));
+
+        // Anything saved later in the request starts a new session, under a new identifier.
+        sessionID = Optional.empty();
+        data = Optional.empty();
+
+        loaded = true;
+        modified = false;
+    }
+
+    CompletionStage<Void> writeBack(final AsyncSessionFacade async, final Http.Response response) {
+        CompletionStage<Void> removed = invalidatedID.map(async::invalidate)
+                .orElse(CompletableFuture.completedFuture(null));
+
+        if(!modified) {
+            invalidatedID.ifPresent(invalidated -> response.discardCookie(SessionConfig.getInstance().getCookieName()));
+            return removed;
+        }
+
+        if(!sessionID.isPresent()) {
+            sessionID = Optional.of(SessionManager.generateID());
+            response.setCookie(toCookie(sessionID.get()));
+        }
+
+        String id = sessionID.get();
+        String value = data.get();
+
+        return removed.thenCompose(done -> async.setData(id, value));
+    }
+
+    private static Http.Cookie toCookie(final String sessionID) {
+        SessionConfig config = SessionConfig.getInstance();
+
+        return Http.Cookie.builder(config.getCookieName(), sessionID)
+                .withPath(config.getCookiePath())
+                .withSecure(config.isCookieSecure())
+                .withHttpOnly(config.isCookieHttpOnly())
+                .build();
+    }
+}
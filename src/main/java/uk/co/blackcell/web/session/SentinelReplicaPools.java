@@ -0,0 +1,185 @@
+/**
+ * This is the Sentinel replica pool register, which discovers the healthy replicas of the
+ * Sentinel-monitored master, keeps a connection pool for each, and hands them out in turn so
+ * that session reads are spread across replicas. Replicas are rediscovered periodically, so
+ * failovers, new replicas and failed replicas are picked up without a restart.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class SentinelReplicaPools
+{
+    private static final Logger logger = LoggerFactory.getLogger(SentinelReplicaPools.class);
+
+    private static final String THREAD_NAME                 = "session-replica-discovery";
+
+    private static final String REPLICA_IP                  = "ip";
+    private static final String REPLICA_PORT                = "port";
+    private static final String REPLICA_FLAGS               = "flags";
+    private static final String REPLICA_LINK                = "master-link-status";
+
+    private static final String HEALTHY_LINK                = "ok";
+    private static final String[] UNHEALTHY_FLAGS           = { "s_down", "o_down", "disconnected" };
+
+    private static final String ADDRESS_SEPARATOR           = ":";
+
+    private final String master;
+    private final Set<String> sentinels;
+
+    private volatile GenericObjectPoolConfig poolConfig;
+    private final int connectionTimeout;
+    private final int socketTimeout;
+    private final Optional<String> credential;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private ScheduledExecutorService scheduler;
+
+    // Replaced as a whole on every discovery, so readers never need to lock.
+    private volatile Map<HostAndPort, ReconfigurableJedisPool> pools = Collections.emptyMap();
+
+    private volatile List<JedisPool> rotation = Collections.emptyList();
+
+    SentinelReplicaPools(final String master, final Set<String> sentinels, final GenericObjectPoolConfig poolConfig,
+                         final int connectionTimeout, final int socketTimeout, final Optional<String> credential) {
+        logger.debug("SentinelReplicaPools({}, {}) constructor.", master, sentinels);
+
+        this.master = master;
+        this.sentinels = sentinels;
+        this.poolConfig = poolConfig;
+        this.connectionTimeout = connectionTimeout;
+        this.socketTimeout = socketTimeout;
+        this.credential = credential;
+    }
+
+    void start(final long intervalMillis) {
+        discover();
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        scheduler.scheduleWithFixedDelay(this::discover, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void close() {
+        if(scheduler != null) {
+            scheduler.shutdownNow();
+        }
+
+        pools.values().forEach(JedisPool::close);
+
+        pools = Collections.emptyMap();
+        rotation = Collections.emptyList();
+    }
+
+    Optional<JedisPool> next() {
+        List<JedisPool> replicas = rotation;
+        if(replicas.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(replicas.get(Math.floorMod(next.getAndIncrement(), replicas.size())));
+    }
+
+    Collection<JedisPool> getPools() {
+        return rotation;
+    }
+
+    synchronized void reconfigure(final GenericObjectPoolConfig poolConfig) {
+        this.poolConfig = poolConfig;
+
+        pools.values().forEach(pool -> pool.reconfigure(poolConfig));
+    }
+
+    private synchronized void discover() {
+        Optional<Set<HostAndPort>> discovered = askSentinels();
+        if(!discovered.isPresent()) {
+            logger.warn("No Sentinel could list the replicas of [{}], keeping {} known replica(s)...", master, pools.size());
+            return;
+        }
+
+        Map<HostAndPort, ReconfigurableJedisPool> current = pools;
+        Map<HostAndPort, ReconfigurableJedisPool> updated = new LinkedHashMap<>();
+
+        for(HostAndPort replica : discovered.get()) {
+            ReconfigurableJedisPool pool = current.get(replica);
+            if(pool == null) {
+                logger.debug("Replica discovered on Host:{}, Port:{}...", replica.getHost(), replica.getPort());
+                pool = new ReconfigurableJedisPool(poolConfig, replica.getHost(), replica.getPort(), connectionTimeout, socketTimeout,
+                        credential.orElse(null), Protocol.DEFAULT_DATABASE, null);
+            }
+            updated.put(replica, pool);
+        }
+
+        pools = updated;
+        rotation = Collections.unmodifiableList(new ArrayList<>(updated.values()));
+
+        // Replicas which have gone are closed once they can no longer be handed out.
+        current.forEach((replica, pool) -> {
+            if(!updated.containsKey(replica)) {
+                logger.debug("Replica removed on Host:{}, Port:{}...", replica.getHost(), replica.getPort());
+                pool.close();
+            }
+        });
+    }
+
+    private Optional<Set<HostAndPort>> askSentinels() {
+        for(String sentinel : sentinels) {
+            int separator = sentinel.lastIndexOf(ADDRESS_SEPARATOR);
+            String host = sentinel.substring(0, separator);
+            int port = Integer.parseInt(sentinel.substring(separator + 1));
+
+            try (Jedis connection = new Jedis(host, port, connectionTimeout, socketTimeout)) {
+                Set<HostAndPort> replicas = new LinkedHashSet<>();
+
+                for(Map<String, String> replica : connection.sentinelSlaves(master)) {
+                    if(isHealthy(replica)) {
+                        replicas.add(new HostAndPort(replica.get(REPLICA_IP), Integer.parseInt(replica.get(REPLICA_PORT))));
+                    }
+                }
+                return Optional.of(replicas);
+
+            } catch(JedisException ex) {
+                logger.debug("Sentinel [{}] could not be asked for replicas: {}", sentinel, ex.toString());
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static boolean isHealthy(final Map<String, String> replica) {
+        String flags = replica.getOrDefault(REPLICA_FLAGS, "");
+        for(String flag : UNHEALTHY_FLAGS) {
+            if(flags.contains(flag)) {
+                return false;
+            }
+        }
+        return HEALTHY_LINK.equals(replica.getOrDefault(REPLICA_LINK, HEALTHY_LINK));
+    }
+}
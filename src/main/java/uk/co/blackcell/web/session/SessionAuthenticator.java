@@ -30,6 +30,8 @@ public final class SessionAuthenticator
 
     private Optional<PrivateKey> key;
 
+    private Optional<String> authenticationKey = Optional.empty();
+
     SessionAuthenticator(final String keyStore) {
         logger.debug("constructor() called...");
         initialise(keyStore);
@@ -66,7 +68,7 @@ public final class SessionAuthenticator
                 throw new SessionAuthenticationFailedException(SESSION_BAD_CONFIGURATION);
             }
 
-            decrypt(param.get());
+            authenticationKey = Optional.of(decrypt(param.get()));
 
         } catch(IllegalArgumentException ex) {
             logger.error("Session failed to authenticate properly: ", ex);
@@ -76,7 +78,10 @@ public final class SessionAuthenticator
 
     public String getAuthenticationKey() {
         logger.debug("getAuthenticationKey() called...");
-        return decrypt(config.getSessionAuthenticationKey());
+        if(!authenticationKey.isPresent()) {
+            authenticationKey = Optional.of(decrypt(config.getSessionAuthenticationKey()));
+        }
+        return authenticationKey.get();
     }
 
     private String decrypt(final String passPhrase) {
@@ -0,0 +1,79 @@
+/**
+ * This is the session cipher, used by the encrypted session implementation. The secret key is
+ * built once, and each thread reuses its own cipher instance, as a cipher is not thread-safe
+ * and provider lookup is expensive. The initialisation vector is given with every message, so
+ * the cipher is initialised for each operation.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.blackcell.web.session.exceptions.SessionTechnicalException;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+
+final class SessionCipher
+{
+    private static final Logger logger = LoggerFactory.getLogger(SessionCipher.class);
+
+    private static final String SECRET_KEY_ALGORITHM        = "AES";
+    private static final String CIPHER_IMPLEMENTATION       = "AES/CBC/PKCS5PADDING";
+
+    static final int VECTOR_LENGTH                          = 16;
+
+    private final SecretKeySpec key;
+
+    private final ThreadLocal<Cipher> ciphers = ThreadLocal.withInitial(SessionCipher::newCipher);
+
+    SessionCipher(final byte[] key) {
+        logger.debug("SessionCipher constructor.");
+
+        this.key = new SecretKeySpec(key, SECRET_KEY_ALGORITHM);
+    }
+
+    byte[] encrypt(final byte[] data, final IvParameterSpec vector) throws GeneralSecurityException {
+        logger.debug("encrypt({} byte(s))...", data.length);
+        return apply(Cipher.ENCRYPT_MODE, vector, data, 0, data.length);
+    }
+
+    byte[] decrypt(final byte[] encrypted, final IvParameterSpec vector) throws GeneralSecurityException {
+        return decrypt(encrypted, 0, encrypted.length, vector);
+    }
+
+    byte[] decrypt(final byte[] encrypted, final int offset, final int length, final IvParameterSpec vector)
+            throws GeneralSecurityException {
+        logger.debug("decrypt({} byte(s))...", length);
+        return apply(Cipher.DECRYPT_MODE, vector, encrypted, offset, length);
+    }
+
+    private byte[] apply(final int mode, final IvParameterSpec vector, final byte[] data, final int offset, final int length)
+            throws GeneralSecurityException {
+        Cipher cipher = ciphers.get();
+        try {
+            cipher.init(mode, key, vector);
+            return cipher.doFinal(data, offset, length);
+
+        } catch(GeneralSecurityException ex) {
+            // A failed cipher may be left mid-operation, so discard it rather than reuse it.
+            ciphers.remove();
+            throw ex;
+        }
+    }
+
+    private static Cipher newCipher() {
+        logger.debug("newCipher() for thread [{}]...", Thread.currentThread().getName());
+        try {
+            return Cipher.getInstance(CIPHER_IMPLEMENTATION);
+
+        } catch(GeneralSecurityException ex) {
+            logger.error("A technical error was raised: " + ex.toString());
+            throw new SessionTechnicalException(ex);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/**
+ * This is the session circuit breaker, which watches the outcome of recent session operations
+ * and, once too many of them have failed or been slow, opens so that further calls fail fast
+ * rather than queue behind an unhealthy store. After a pause it lets a few trial calls through
+ * (half-open), closing again if they all succeed, and re-opening if any of them do not.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+final class SessionCircuitBreaker
+{
+    private static final Logger logger = LoggerFactory.getLogger(SessionCircuitBreaker.class);
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    // Each slot of the window records one call outcome as a set of bits.
+    private static final int FAILED                 = 0x01;
+    private static final int SLOW                   = 0x02;
+
+    private static final SessionMetrics metrics = SessionMetrics.getInstance();
+
+    private static volatile SessionCircuitBreaker instance;
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final int failureRatePercent;
+    private final int slowRatePercent;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final int halfOpenCalls;
+
+    private final AtomicIntegerArray window;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicInteger slowCalls = new AtomicInteger();
+
+    private final AtomicInteger probes = new AtomicInteger();
+    private final AtomicInteger probesSucceeded = new AtomicInteger();
+
+    private volatile State state = State.CLOSED;
+    private volatile long openedAt;
+
+    SessionCircuitBreaker(final int windowSize, final int minimumCalls, final int failureRatePercent, final int slowRatePercent,
+                          final long slowCallMillis, final long openMillis, final int halfOpenCalls) {
+        logger.debug("SessionCircuitBreaker({}, {}, {}, {}) constructor.",
+                new Object[] { windowSize, minimumCalls, failureRatePercent, slowRatePercent });
+
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRatePercent = failureRatePercent;
+        this.slowRatePercent = slowRatePercent;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.halfOpenCalls = halfOpenCalls;
+
+        this.window = new AtomicIntegerArray(windowSize);
+    }
+
+    static SessionCircuitBreaker getInstance() {
+        SessionCircuitBreaker breaker = instance;
+        return (breaker == null) ? create() : breaker;
+    }
+
+    private static synchronized SessionCircuitBreaker create() {
+        if(instance == null) {
+            SessionConfig config = SessionConfig.getInstance();
+
+            instance = fromConfig(config);
+
+            config.addListener(() -> reload(config));
+        }
+        return instance;
+    }
+
+    // Only a change to the circuit settings replaces the breaker, which keeps the state it was in.
+    private static synchronized void reload(final SessionConfig config) {
+        SessionCircuitBreaker current = instance;
+        SessionCircuitBreaker reloaded = fromConfig(config);
+
+        if(current != null && !reloaded.hasSameSettings(current)) {
+            logger.info("Session circuit settings changed, keeping the circuit {}...", current.getState());
+
+            reloaded.takeOver(current);
+            instance = reloaded;
+        }
+    }
+
+    private static SessionCircuitBreaker fromConfig(final SessionConfig config) {
+        return new SessionCircuitBreaker(config.getCircuitWindowSize(), config.getCircuitMinimumCalls(),
+                config.getCircuitFailureRatePercent(), config.getCircuitSlowRatePercent(), config.getCircuitSlowCallInMillis(),
+                config.getCircuitOpenInMillis(), config.getCircuitHalfOpenCalls());
+    }
+
+    static String getCurrentState() {
+        SessionCircuitBreaker breaker = instance;
+        return ((breaker == null) ? State.CLOSED : breaker.getState()).name();
+    }
+
+    State getState() {
+        return state;
+    }
+
+    boolean hasSameSettings(final SessionCircuitBreaker other) {
+        return windowSize == other.windowSize && minimumCalls == other.minimumCalls
+                && failureRatePercent == other.failureRatePercent && slowRatePercent == other.slowRatePercent
+                && slowCallNanos == other.slowCallNanos && openNanos == other.openNanos && halfOpenCalls == other.halfOpenCalls;
+    }
+
+    // An open circuit stays open for what remains of its pause; a half-open one starts its trial
+    // calls again, and a closed one starts a new window, as the window size may have changed.
+    void takeOver(final SessionCircuitBreaker previous) {
+        State previousState = previous.getState();
+
+        openedAt = previous.openedAt;
+        if(previousState == State.HALF_OPEN) {
+            probes.set(halfOpenCalls);
+            probesSucceeded.set(0);
+        }
+        state = previousState;
+    }
+
+    boolean tryAcquire() {
+        State current = state;
+
+        if(current == State.OPEN) {
+            if(System.nanoTime() - openedAt < openNanos) {
+                return false;
+            }
+            transition(State.OPEN, State.HALF_OPEN);
+            current = state;
+        }
+
+        // Only a limited number of trial calls are let through while half-open.
+        if(current == State.HALF_OPEN) {
+            return probes.getAndDecrement() > 0;
+        }
+        return current == State.CLOSED;
+    }
+
+    void onSuccess(final long elapsedNanos) {
+        onResult(false, elapsedNanos);
+    }
+
+    void onFailure(final long elapsedNanos) {
+        onResult(true, elapsedNanos);
+    }
+
+    private void onResult(final boolean failed, final long elapsedNanos) {
+        boolean slow = elapsedNanos >= slowCallNanos;
+
+        switch(state) {
+            case HALF_OPEN:
+                if(failed || slow) {
+                    transition(State.HALF_OPEN, State.OPEN);
+                } else if(probesSucceeded.incrementAndGet() >= halfOpenCalls) {
+                    transition(State.HALF_OPEN, State.CLOSED);
+                }
+                break;
+
+            case CLOSED:
+                record(failed, slow);
+                if(isTripped()) {
+                    transition(State.CLOSED, State.OPEN);
+                }
+                break;
+
+            default:
+                // Calls which started before the circuit opened are of no further interest.
+                break;
+        }
+    }
+
+    private void record(final boolean failed, final boolean slow) {
+        int outcome = (failed ? FAILED : 0) | (slow ? SLOW : 0);
+
+        int slot = (int)(calls.getAndIncrement() % windowSize);
+        int replaced = window.getAndSet(slot, outcome);
+
+        failures.addAndGet(bit(outcome, FAILED) - bit(replaced, FAILED));
+        slowCalls.addAndGet(bit(outcome, SLOW) - bit(replaced, SLOW));
+    }
+
+    private boolean isTripped() {
+        long recorded = Math.min(calls.get(), windowSize);
+        if(recorded < minimumCalls) {
+            return false;
+        }
+        return failures.get() * 100L >= failureRatePercent * recorded || slowCalls.get() * 100L >= slowRatePercent * recorded;
+    }
+
+    private synchronized void transition(final State from, final State to) {
+        if(state != from) {
+            return;
+        }
+
+        switch(to) {
+            case OPEN:
+                openedAt = System.nanoTime();
+                metrics.count(SessionMetrics.CIRCUIT_OPENED, 1);
+                logger.warn("Session circuit opened: {} of {} recent call(s) failed, {} were slow...",
+                        new Object[] { failures.get(), Math.min(calls.get(), windowSize), slowCalls.get() });
+                break;
+
+            case HALF_OPEN:
+                probes.set(halfOpenCalls);
+                probesSucceeded.set(0);
+                logger.info("Session circuit half-open, trying {} call(s)...", halfOpenCalls);
+                break;
+
+            default:
+                reset();
+                logger.info("Session circuit closed.");
+                break;
+        }
+        state = to;
+    }
+
+    private void reset() {
+        for(int slot = 0; slot < windowSize; slot++) {
+            window.set(slot, 0);
+        }
+        calls.set(0);
+        failures.set(0);
+        slowCalls.set(0);
+    }
+
+    private static int bit(final int outcome, final int flag) {
+        return ((outcome & flag) != 0) ? 1 : 0;
+    }
+}
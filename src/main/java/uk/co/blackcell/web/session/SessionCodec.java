@@ -0,0 +1,17 @@
+/**
+ * This is the session codec interface, through which an application stores its own session
+ * objects rather than strings. A codec turns a session object into the bytes which are then
+ * compressed, encrypted and stored, and back again. Codecs are called concurrently, so must be
+ * thread-safe, and should raise an IllegalArgumentException for data they cannot decode.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+public interface SessionCodec<T>
+{
+    byte[] encode(final T session);
+
+    T decode(final byte[] data);
+}
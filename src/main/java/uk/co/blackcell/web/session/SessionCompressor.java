@@ -0,0 +1,130 @@
+/**
+ * This is the session compressor, which deflates session data before it is encrypted and
+ * stored. Data below the configured threshold, or which does not get any smaller, is left
+ * uncompressed. Each thread reuses its own deflater and inflater, whose native buffers are
+ * expensive to create.
+ *
+ * A compressed payload is the uncompressed length (4 bytes, big-endian) followed by the raw
+ * deflate stream, so the output buffer can be allocated exactly when inflating. As the length
+ * is read from stored data, a length above the configured maximum is rejected before anything
+ * is allocated, and data larger than the maximum is never compressed.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+final class SessionCompressor
+{
+    private static final Logger logger = LoggerFactory.getLogger(SessionCompressor.class);
+
+    private static final int LENGTH_PREFIX                  = 4;
+
+    private final boolean enabled;
+    private final int threshold;
+    private final int maximumLength;
+
+    private final ThreadLocal<Deflater> deflaters;
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    SessionCompressor(final boolean enabled, final int threshold, final int maximumLength, final int level) {
+        logger.debug("SessionCompressor({}, {}, {}, {}) constructor.", new Object[] { enabled, threshold, maximumLength, level });
+
+        this.enabled = enabled;
+        this.threshold = threshold;
+        this.maximumLength = maximumLength;
+
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level, true));
+    }
+
+    Optional<byte[]> compress(final byte[] data) {
+        if(!enabled || data.length < threshold || data.length <= LENGTH_PREFIX || data.length > maximumLength) {
+            return Optional.empty();
+        }
+
+        Deflater deflater = deflaters.get();
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+
+            // Compression is only worthwhile if the result is smaller than the original.
+            byte[] buffer = new byte[data.length];
+            writeLength(buffer, data.length);
+
+            int length = LENGTH_PREFIX;
+            while(!deflater.finished()) {
+                if(length == buffer.length) {
+                    logger.debug("Data of {} byte(s) is incompressible, stored as-is...", data.length);
+                    return Optional.empty();
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+
+            logger.debug("Data compressed from {} to {} byte(s)...", data.length, length);
+            return Optional.of(Arrays.copyOf(buffer, length));
+
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    byte[] decompress(final byte[] compressed) throws DataFormatException {
+        return decompress(compressed, 0, compressed.length);
+    }
+
+    byte[] decompress(final byte[] compressed, final int offset, final int length) throws DataFormatException {
+        if(length < LENGTH_PREFIX) {
+            throw new DataFormatException("Compressed session data is truncated.");
+        }
+
+        int originalLength = readLength(compressed, offset);
+        if(originalLength < 0 || originalLength > maximumLength) {
+            throw new DataFormatException("Compressed session data has an invalid length: " + originalLength);
+        }
+
+        Inflater inflater = inflaters.get();
+        try {
+            inflater.setInput(compressed, offset + LENGTH_PREFIX, length - LENGTH_PREFIX);
+
+            byte[] data = new byte[originalLength];
+
+            int inflated = 0;
+            while(inflated < originalLength && !inflater.finished()) {
+                int count = inflater.inflate(data, inflated, originalLength - inflated);
+                if(count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += count;
+            }
+
+            if(inflated != originalLength) {
+                throw new DataFormatException("Compressed session data is truncated.");
+            }
+            return data;
+
+        } finally {
+            inflater.reset();
+        }
+    }
+
+    private static void writeLength(final byte[] buffer, final int length) {
+        buffer[0] = (byte)(length >>> 24);
+        buffer[1] = (byte)(length >>> 16);
+        buffer[2] = (byte)(length >>> 8);
+        buffer[3] = (byte)length;
+    }
+
+    private static int readLength(final byte[] buffer, final int offset) {
+        return ((buffer[offset] & 0xFF) << 24) | ((buffer[offset + 1] & 0xFF) << 16)
+                | ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+    }
+}
@@ -2,24 +2,49 @@ package uk.co.blackcell.web.session;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import redis.clients.jedis.HostAndPort;
 
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static uk.co.blackcell.web.session.constants.SessionConstants.SESSION_BAD_CONFIGURATION;
 
 class SessionConfig
 {
     private static final String INTERNAL_SESSION_CONFIG         = "session.properties";
     private static final String EXTERNAL_SESSION_CONFIG         = "session.config.file";
+    private static final String EXTERNAL_SESSION_RELOAD         = "session.config.reload.enabled";
 
     private static final String SESSION_ENCRYPTION_KEY          = "session.encryption.key";
+    private static final String SESSION_ENCRYPTION_KEY_ID       = "session.encryption.key.id";
+    private static final String SESSION_ENCRYPTION_KEYS         = "session.encryption.keys.";
     private static final String SESSION_AUTHENTICATION_KEY      = "session.authentication.key";
 
     private static final String SESSION_TIMEOUT_SECONDS         = "session.timeout.seconds";
 
+    private static final String SESSION_ID_GENERATOR_KEY        = "session.id.generator";
+    private static final String SESSION_ID_BYTES_KEY            = "session.id.bytes";
+    private static final String SESSION_ID_PREFIX_KEY           = "session.id.prefix";
+
     private static final String REDIS_HOST_CONFIG_KEY           = "redis.server.host";
     private static final String REDIS_PORT_CONFIG_KEY           = "redis.server.port";
     private static final String REDIS_SESSION_ENCRYPTION_KEY    = "redis.session.encryption";
@@ -28,21 +53,182 @@ class SessionConfig
     private static final String REDIS_SENTINEL_MASTER_KEY       = "redis.sentinel.master";
     private static final String REDIS_SENTINEL_LIST_KEY         = "redis.sentinel.list";
 
+    private static final String REDIS_REPLICA_READ_KEY          = "redis.sentinel.replica.read.enabled";
+    private static final String REDIS_REPLICA_DISCOVERY_KEY     = "redis.sentinel.replica.discovery.millis";
+    private static final String REDIS_REPLICA_RYW_KEY           = "redis.sentinel.replica.read.your.writes.millis";
+    private static final String REDIS_REPLICA_FALLBACK_KEY      = "redis.sentinel.replica.fallback.enabled";
+    private static final String REDIS_REPLICA_TRACKING_KEY      = "redis.sentinel.replica.tracking.size";
+
+    private static final String REDIS_CLUSTER_ENABLED_KEY       = "redis.cluster.enabled";
+    private static final String REDIS_CLUSTER_NODES_KEY         = "redis.cluster.nodes";
+    private static final String REDIS_CLUSTER_ATTEMPTS_KEY      = "redis.cluster.max.attempts";
+
+    private static final String OFF_HEAP_ENABLED_KEY            = "session.store.offheap.enabled";
+    private static final String OFF_HEAP_CAPACITY_KEY           = "session.store.offheap.capacity.mb";
+    private static final String OFF_HEAP_STRIPES_KEY            = "session.store.offheap.stripes";
+    private static final String OFF_HEAP_TICK_KEY               = "session.store.offheap.tick.millis";
+    private static final String OFF_HEAP_WHEEL_KEY              = "session.store.offheap.wheel.size";
+
+    private static final String REDIS_POOL_MAX_TOTAL_KEY        = "redis.pool.max.total";
+    private static final String REDIS_POOL_MAX_IDLE_KEY         = "redis.pool.max.idle";
+    private static final String REDIS_POOL_MIN_IDLE_KEY         = "redis.pool.min.idle";
+    private static final String REDIS_POOL_MAX_WAIT_KEY         = "redis.pool.max.wait.millis";
+    private static final String REDIS_POOL_TEST_BORROW_KEY      = "redis.pool.test.on.borrow";
+    private static final String REDIS_POOL_TEST_IDLE_KEY        = "redis.pool.test.while.idle";
+    private static final String REDIS_POOL_EVICTION_RUN_KEY     = "redis.pool.eviction.interval.millis";
+    private static final String REDIS_POOL_EVICTABLE_IDLE_KEY   = "redis.pool.evictable.idle.millis";
+
+    private static final String REDIS_CONNECT_TIMEOUT_KEY       = "redis.connection.timeout.millis";
+    private static final String REDIS_SOCKET_TIMEOUT_KEY        = "redis.socket.timeout.millis";
+
+    private static final String SESSION_CACHE_ENABLED_KEY       = "session.cache.enabled";
+    private static final String SESSION_CACHE_SIZE_KEY          = "session.cache.size";
+    private static final String SESSION_CACHE_TTL_KEY           = "session.cache.ttl.millis";
+    private static final String SESSION_CACHE_CHANNEL_KEY       = "session.cache.channel";
+
+    private static final String SESSION_ASYNC_THREADS_KEY       = "session.async.threads";
+    private static final String SESSION_ASYNC_QUEUE_KEY         = "session.async.queue.size";
+
+    private static final String SESSION_BATCH_PARALLEL_KEY      = "session.batch.parallel.threshold";
+
+    private static final String SESSION_DIRTY_CHECK_KEY         = "session.dirty.check.enabled";
+    private static final String SESSION_DIRTY_CHECK_SIZE_KEY    = "session.dirty.check.size";
+
+    private static final String SESSION_REFRESH_THRESHOLD_KEY   = "session.timeout.refresh.threshold.seconds";
+    private static final String SESSION_REFRESH_BATCH_KEY       = "session.timeout.refresh.batch.millis";
+    private static final String SESSION_REFRESH_TRACKING_KEY    = "session.timeout.refresh.tracking.size";
+
+    private static final String SESSION_COMPRESSION_KEY         = "session.compression.enabled";
+    private static final String SESSION_COMPRESSION_SIZE_KEY    = "session.compression.threshold.bytes";
+    private static final String SESSION_COMPRESSION_LEVEL_KEY   = "session.compression.level";
+    private static final String SESSION_COMPRESSION_MAX_KEY     = "session.compression.max.bytes";
+
+    private static final String SESSION_METRICS_JMX_KEY         = "session.metrics.jmx.enabled";
+
+    private static final String SESSION_STARTUP_CONNECTIONS_KEY = "session.startup.connections";
+    private static final String SESSION_SHUTDOWN_TIMEOUT_KEY    = "session.shutdown.timeout.millis";
+
+    private static final String SESSION_BUDGET_KEY              = "session.operation.budget.millis";
+
+    private static final String COOKIE_NAME_KEY                 = "session.cookie.name";
+    private static final String COOKIE_PATH_KEY                 = "session.cookie.path";
+    private static final String COOKIE_SECURE_KEY               = "session.cookie.secure";
+    private static final String COOKIE_HTTP_ONLY_KEY            = "session.cookie.http.only";
+
+    private static final String CIRCUIT_ENABLED_KEY             = "session.circuit.enabled";
+    private static final String CIRCUIT_WINDOW_KEY              = "session.circuit.window.size";
+    private static final String CIRCUIT_MINIMUM_KEY             = "session.circuit.minimum.calls";
+    private static final String CIRCUIT_FAILURE_RATE_KEY        = "session.circuit.failure.rate.percent";
+    private static final String CIRCUIT_SLOW_RATE_KEY           = "session.circuit.slow.rate.percent";
+    private static final String CIRCUIT_SLOW_CALL_KEY           = "session.circuit.slow.call.millis";
+    private static final String CIRCUIT_OPEN_KEY                = "session.circuit.open.millis";
+    private static final String CIRCUIT_HALF_OPEN_KEY           = "session.circuit.half.open.calls";
+
+    private static final String ID_GENERATOR_DEFAULT            = "random";
+    private static final String ID_BYTES_DEFAULT                = "16";
+    private static final String ID_PREFIX_DEFAULT               = "";
+
     private static final String REDIS_HOST_DEFAULT              = "localhost";
     private static final String REDIS_PORT_DEFAULT              = "6379";
     private static final String REDIS_ENCRYPTION_DEFAULT        = "true";
+    private static final String ENCRYPTION_KEY_ID_DEFAULT       = "0";
+
+    // Key identifiers are stored as a single byte.
+    private static final int MAXIMUM_KEY_ID                     = 255;
 
     private static final String REDIS_ENABLED_DEFAULT           = "false";
     private static final String REDIS_MASTER_DEFAULT            = "mymaster";
     private static final String REDIS_LIST_DEFAULT              = "127.0.0.1:26379";
 
+    private static final String REPLICA_READ_DEFAULT            = "false";
+    private static final String REPLICA_DISCOVERY_DEFAULT       = "5000";
+    private static final String REPLICA_RYW_DEFAULT             = "1000";
+    private static final String REPLICA_FALLBACK_DEFAULT        = "true";
+    private static final String REPLICA_TRACKING_DEFAULT        = "100000";
+
+    private static final String CLUSTER_ENABLED_DEFAULT         = "false";
+    private static final String CLUSTER_NODES_DEFAULT           = "127.0.0.1:7000";
+    private static final String CLUSTER_ATTEMPTS_DEFAULT        = "5";
+
+    private static final String OFF_HEAP_ENABLED_DEFAULT        = "false";
+    private static final String OFF_HEAP_CAPACITY_DEFAULT       = "256";
+    private static final String OFF_HEAP_STRIPES_DEFAULT        = "64";
+    private static final String OFF_HEAP_TICK_DEFAULT           = "1000";
+    private static final String OFF_HEAP_WHEEL_DEFAULT          = "512";
+
+    private static final String POOL_MAX_TOTAL_DEFAULT          = "128";
+    private static final String POOL_MAX_IDLE_DEFAULT           = "32";
+    private static final String POOL_MIN_IDLE_DEFAULT           = "1";
+    private static final String POOL_MAX_WAIT_DEFAULT           = "30000";
+    private static final String POOL_TEST_BORROW_DEFAULT        = "false";
+    private static final String POOL_TEST_IDLE_DEFAULT          = "true";
+    private static final String POOL_EVICTION_RUN_DEFAULT       = "30000";
+    private static final String POOL_EVICTABLE_IDLE_DEFAULT     = "60000";
+
+    private static final String CONNECT_TIMEOUT_DEFAULT         = "2000";
+    private static final String SOCKET_TIMEOUT_DEFAULT          = "2000";
+
+    private static final String CACHE_ENABLED_DEFAULT           = "false";
+    private static final String CACHE_SIZE_DEFAULT              = "10000";
+    private static final String CACHE_TTL_DEFAULT               = "1000";
+    private static final String CACHE_CHANNEL_DEFAULT           = "session:invalidations";
+
+    private static final String ASYNC_THREADS_DEFAULT           = "16";
+    private static final String ASYNC_QUEUE_DEFAULT             = "1000";
+
+    private static final String BATCH_PARALLEL_DEFAULT          = "64";
+
+    private static final String DIRTY_CHECK_DEFAULT             = "false";
+    private static final String DIRTY_CHECK_SIZE_DEFAULT        = "100000";
+
+    private static final String REFRESH_THRESHOLD_DEFAULT       = "0";
+    private static final String REFRESH_BATCH_DEFAULT           = "1000";
+    private static final String REFRESH_TRACKING_DEFAULT        = "100000";
+
+    private static final String COMPRESSION_DEFAULT             = "false";
+    private static final String COMPRESSION_SIZE_DEFAULT        = "512";
+    private static final String COMPRESSION_LEVEL_DEFAULT       = "1";
+    private static final String COMPRESSION_MAX_DEFAULT         = "8388608";
+
+    private static final String METRICS_JMX_DEFAULT             = "true";
+
+    private static final String STARTUP_CONNECTIONS_DEFAULT     = "8";
+    private static final String SHUTDOWN_TIMEOUT_DEFAULT        = "5000";
+
+    private static final String BUDGET_DEFAULT                  = "2000";
+
+    private static final String COOKIE_NAME_DEFAULT             = "SESSION_ID";
+    private static final String COOKIE_PATH_DEFAULT             = "/";
+    private static final String COOKIE_SECURE_DEFAULT           = "true";
+    private static final String COOKIE_HTTP_ONLY_DEFAULT        = "true";
+
+    private static final String CIRCUIT_ENABLED_DEFAULT         = "true";
+    private static final String CIRCUIT_WINDOW_DEFAULT          = "100";
+    private static final String CIRCUIT_MINIMUM_DEFAULT         = "20";
+    private static final String CIRCUIT_FAILURE_RATE_DEFAULT    = "50";
+    private static final String CIRCUIT_SLOW_RATE_DEFAULT       = "80";
+    private static final String CIRCUIT_SLOW_CALL_DEFAULT       = "1000";
+    private static final String CIRCUIT_OPEN_DEFAULT            = "5000";
+    private static final String CIRCUIT_HALF_OPEN_DEFAULT       = "5";
+
+    private static final String RELOAD_DEFAULT                  = "true";
+
+    private static final String WATCHER_THREAD_NAME             = "session-config-watcher";
+
+    // Editors often save a file in several steps, so changes are left to settle before reloading.
+    private static final long RELOAD_SETTLE_MILLIS              = 250;
+
     private static final String REDIS_LIST_SEPARATOR            = ",";
+    private static final String REDIS_PORT_SEPARATOR            = ":";
 
     private static final Logger logger = LoggerFactory.getLogger(SessionConfig.class);
 
     private static final SessionConfig INSTANCE = new SessionConfig();
 
-    private Properties properties;
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    // Replaced as a whole on reload, so every setting is parsed once and readers never lock.
+    private volatile Snapshot snapshot;
 
     private SessionConfig() {
         logger.debug("SessionConfig constructor.");
@@ -55,7 +241,7 @@ class SessionConfig
         }
     }
 
-    static synchronized SessionConfig getInstance() {
+    static SessionConfig getInstance() {
         return INSTANCE;
     }
 
@@ -71,49 +257,658 @@ class SessionConfig
             configStream = getClass().getClassLoader().getResource(INTERNAL_SESSION_CONFIG).openStream();
         }
 
-        properties = new Properties();
-        properties.load(configStream);
+        snapshot = new Snapshot(load(configStream));
+
+        if(resourceToLoad != null && snapshot.reloadEnabled) {
+            watch(Paths.get(resourceToLoad).toAbsolutePath());
+        }
+    }
+
+    private static Properties load(final InputStream configStream) throws IOException {
+        try (InputStream in = configStream) {
+            Properties properties = new Properties();
+            properties.load(in);
+            return properties;
+        }
+    }
+
+    // Listeners are told once a changed configuration file has been reloaded.
+    void addListener(final Runnable listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(final Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    private void watch(final Path file) {
+        logger.info("Watching [{}] for session configuration changes...", file);
+
+        Thread watcher = new Thread(() -> {
+            try (WatchService service = file.getFileSystem().newWatchService()) {
+                file.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+                while(true) {
+                    WatchKey key = service.take();
+                    boolean changed = isChanged(key, file);
+
+                    TimeUnit.MILLISECONDS.sleep(RELOAD_SETTLE_MILLIS);
+                    while((key = service.poll()) != null) {
+                        changed |= isChanged(key, file);
+                    }
+
+                    if(changed) {
+                        reload(file);
+                    }
+                }
+
+            } catch(IOException | ClosedWatchServiceException ex) {
+                logger.warn("Session configuration changes can no longer be watched for: " + ex.toString());
+
+            } catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }, WATCHER_THREAD_NAME);
+
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private static boolean isChanged(final WatchKey key, final Path file) {
+        boolean changed = false;
+        for(WatchEvent<?> event : key.pollEvents()) {
+            changed |= file.getFileName().equals(event.context());
+        }
+        key.reset();
+
+        return changed;
+    }
+
+    private void reload(final Path file) {
+        try {
+            snapshot = new Snapshot(load(new FileInputStream(file.toFile())));
+            logger.info("Session configuration reloaded from [{}].", file);
+
+        } catch(IOException | IllegalArgumentException ex) {
+            logger.error("Session configuration could not be reloaded, the current settings are kept: " + ex.toString());
+            return;
+        }
+
+        for(Runnable listener : listeners) {
+            try {
+                listener.run();
+
+            } catch(RuntimeException ex) {
+                logger.error("Session configuration listener failed: " + ex.toString());
+            }
+        }
     }
 
     public String getRedisServerHost() {
-        return properties.getProperty(REDIS_HOST_CONFIG_KEY, REDIS_HOST_DEFAULT);
+        return snapshot.redisServerHost;
     }
 
     public int getRedisServerPort() {
-        return Integer.parseInt(properties.getProperty(REDIS_PORT_CONFIG_KEY, REDIS_PORT_DEFAULT));
+        return snapshot.redisServerPort;
     }
 
     public boolean isSessionEncryptionEnabled() {
-        return Boolean.parseBoolean(properties.getProperty(REDIS_SESSION_ENCRYPTION_KEY, REDIS_ENCRYPTION_DEFAULT));
+        return snapshot.sessionEncryptionEnabled;
     }
 
     public int getSessionTimeoutInSeconds() {
-        return Integer.parseInt(properties.getProperty(SESSION_TIMEOUT_SECONDS));
+        return snapshot.sessionTimeoutInSeconds;
+    }
+
+    String getSessionIdGenerator() {
+        return snapshot.sessionIdGenerator;
+    }
+
+    int getSessionIdBytes() {
+        return snapshot.sessionIdBytes;
+    }
+
+    String getSessionIdPrefix() {
+        return snapshot.sessionIdPrefix;
+    }
+
+    long getTimeoutRefreshThresholdInSeconds() {
+        return snapshot.timeoutRefreshThresholdInSeconds;
+    }
+
+    long getTimeoutRefreshBatchInMillis() {
+        return snapshot.timeoutRefreshBatchInMillis;
+    }
+
+    int getTimeoutRefreshTrackingSize() {
+        return snapshot.timeoutRefreshTrackingSize;
+    }
+
+    boolean isCompressionEnabled() {
+        return snapshot.compressionEnabled;
+    }
+
+    int getCompressionThreshold() {
+        return snapshot.compressionThreshold;
+    }
+
+    int getCompressionMaximum() {
+        return snapshot.compressionMaximum;
+    }
+
+    int getCompressionLevel() {
+        return snapshot.compressionLevel;
+    }
+
+    boolean isMetricsJmxEnabled() {
+        return snapshot.metricsJmxEnabled;
+    }
+
+    int getStartupConnections() {
+        return snapshot.startupConnections;
+    }
+
+    long getShutdownTimeoutInMillis() {
+        return snapshot.shutdownTimeoutInMillis;
+    }
+
+    long getOperationBudgetInMillis() {
+        return snapshot.operationBudgetInMillis;
+    }
+
+    String getCookieName() {
+        return snapshot.cookieName;
+    }
+
+    String getCookiePath() {
+        return snapshot.cookiePath;
+    }
+
+    boolean isCookieSecure() {
+        return snapshot.cookieSecure;
+    }
+
+    boolean isCookieHttpOnly() {
+        return snapshot.cookieHttpOnly;
+    }
+
+    boolean isCircuitEnabled() {
+        return snapshot.circuitEnabled;
+    }
+
+    int getCircuitWindowSize() {
+        return snapshot.circuitWindowSize;
+    }
+
+    int getCircuitMinimumCalls() {
+        return snapshot.circuitMinimumCalls;
+    }
+
+    int getCircuitFailureRatePercent() {
+        return snapshot.circuitFailureRatePercent;
+    }
+
+    int getCircuitSlowRatePercent() {
+        return snapshot.circuitSlowRatePercent;
+    }
+
+    long getCircuitSlowCallInMillis() {
+        return snapshot.circuitSlowCallInMillis;
+    }
+
+    long getCircuitOpenInMillis() {
+        return snapshot.circuitOpenInMillis;
+    }
+
+    int getCircuitHalfOpenCalls() {
+        return snapshot.circuitHalfOpenCalls;
     }
 
     public String getSessionEncryptionKey() {
-        return properties.getProperty(SESSION_ENCRYPTION_KEY);
+        return snapshot.sessionEncryptionKey;
+    }
+
+    Map<Integer, String> getSessionEncryptionKeys() {
+        return snapshot.sessionEncryptionKeys;
+    }
+
+    int getSessionEncryptionKeyId() {
+        return snapshot.sessionEncryptionKeyId;
     }
 
     public String getSessionAuthenticationKey() {
-        return properties.getProperty(SESSION_AUTHENTICATION_KEY);
+        return snapshot.sessionAuthenticationKey;
+    }
+
+    boolean isCacheEnabled() {
+        return snapshot.cacheEnabled;
+    }
+
+    int getCacheSize() {
+        return snapshot.cacheSize;
+    }
+
+    long getCacheTimeToLiveInMillis() {
+        return snapshot.cacheTimeToLiveInMillis;
+    }
+
+    String getCacheChannel() {
+        return snapshot.cacheChannel;
+    }
+
+    int getAsyncThreads() {
+        return snapshot.asyncThreads;
+    }
+
+    int getAsyncQueueSize() {
+        return snapshot.asyncQueueSize;
+    }
+
+    int getBatchParallelThreshold() {
+        return snapshot.batchParallelThreshold;
+    }
+
+    boolean isDirtyCheckEnabled() {
+        return snapshot.dirtyCheckEnabled;
+    }
+
+    int getDirtyCheckSize() {
+        return snapshot.dirtyCheckSize;
+    }
+
+    boolean isReplicaReadEnabled() {
+        return snapshot.replicaReadEnabled;
+    }
+
+    long getReplicaDiscoveryInMillis() {
+        return snapshot.replicaDiscoveryInMillis;
+    }
+
+    long getReplicaReadYourWritesInMillis() {
+        return snapshot.replicaReadYourWritesInMillis;
+    }
+
+    boolean isReplicaFallbackEnabled() {
+        return snapshot.replicaFallbackEnabled;
+    }
+
+    int getReplicaTrackingSize() {
+        return snapshot.replicaTrackingSize;
+    }
+
+    boolean isClusterEnabled() {
+        return snapshot.clusterEnabled;
+    }
+
+    Set<HostAndPort> getClusterNodes() {
+        return snapshot.clusterNodes;
+    }
+
+    int getClusterMaxAttempts() {
+        return snapshot.clusterMaxAttempts;
+    }
+
+    boolean isOffHeapEnabled() {
+        return snapshot.offHeapEnabled;
+    }
+
+    int getOffHeapCapacityInMegabytes() {
+        return snapshot.offHeapCapacityInMegabytes;
+    }
+
+    int getOffHeapStripes() {
+        return snapshot.offHeapStripes;
+    }
+
+    int getOffHeapTickInMillis() {
+        return snapshot.offHeapTickInMillis;
+    }
+
+    int getOffHeapWheelSize() {
+        return snapshot.offHeapWheelSize;
+    }
+
+    int getPoolMaxTotal() {
+        return snapshot.poolMaxTotal;
+    }
+
+    int getPoolMaxIdle() {
+        return snapshot.poolMaxIdle;
+    }
+
+    int getPoolMinIdle() {
+        return snapshot.poolMinIdle;
+    }
+
+    long getPoolMaxWaitInMillis() {
+        return snapshot.poolMaxWaitInMillis;
+    }
+
+    boolean isPoolTestOnBorrow() {
+        return snapshot.poolTestOnBorrow;
+    }
+
+    boolean isPoolTestWhileIdle() {
+        return snapshot.poolTestWhileIdle;
+    }
+
+    // A negative interval disables eviction of idle connections.
+    long getPoolEvictionIntervalInMillis() {
+        return snapshot.poolEvictionIntervalInMillis;
+    }
+
+    long getPoolEvictableIdleInMillis() {
+        return snapshot.poolEvictableIdleInMillis;
+    }
+
+    int getConnectionTimeoutInMillis() {
+        return snapshot.connectionTimeoutInMillis;
+    }
+
+    int getSocketTimeoutInMillis() {
+        return snapshot.socketTimeoutInMillis;
     }
 
     boolean isSentinelEnabled() {
-        return Boolean.parseBoolean(properties.getProperty(REDIS_SENTINEL_ENABLED_KEY, REDIS_ENABLED_DEFAULT));
+        return snapshot.sentinelEnabled;
     }
 
     String getMaster() {
-        return properties.getProperty(REDIS_SENTINEL_MASTER_KEY, REDIS_MASTER_DEFAULT);
+        return snapshot.master;
     }
 
     Set<String> getSentinelList() {
-        Set<String> list = new TreeSet<>();
-        String sentinels = properties.getProperty(REDIS_SENTINEL_LIST_KEY, REDIS_LIST_DEFAULT);
-        for(String instance : sentinels.split(REDIS_LIST_SEPARATOR)) {
-            list.add(instance);
-        }
-        return list;
+        return snapshot.sentinelList;
     }
 
+    /**
+     * An immutable, fully parsed and validated copy of the session configuration. A badly
+     * configured setting is reported when the configuration is loaded, rather than on first use.
+     */
+    private static final class Snapshot
+    {
+        private final Properties properties;
+
+        private final boolean reloadEnabled;
+
+        private final String redisServerHost;
+        private final int redisServerPort;
+        private final boolean sessionEncryptionEnabled;
+
+        private final String sessionEncryptionKey;
+        private final Map<Integer, String> sessionEncryptionKeys;
+        private final int sessionEncryptionKeyId;
+        private final String sessionAuthenticationKey;
+
+        private final int sessionTimeoutInSeconds;
+
+        private final String sessionIdGenerator;
+        private final int sessionIdBytes;
+        private final String sessionIdPrefix;
+
+        private final long timeoutRefreshThresholdInSeconds;
+        private final long timeoutRefreshBatchInMillis;
+        private final int timeoutRefreshTrackingSize;
+
+        private final boolean compressionEnabled;
+        private final int compressionThreshold;
+        private final int compressionLevel;
+        private final int compressionMaximum;
+
+        private final boolean metricsJmxEnabled;
+
+        private final int startupConnections;
+        private final long shutdownTimeoutInMillis;
+
+        private final long operationBudgetInMillis;
+
+        private final String cookieName;
+        private final String cookiePath;
+        private final boolean cookieSecure;
+        private final boolean cookieHttpOnly;
+
+        private final boolean circuitEnabled;
+        private final int circuitWindowSize;
+        private final int circuitMinimumCalls;
+        private final int circuitFailureRatePercent;
+        private final int circuitSlowRatePercent;
+        private final long circuitSlowCallInMillis;
+        private final long circuitOpenInMillis;
+        private final int circuitHalfOpenCalls;
+
+        private final boolean cacheEnabled;
+        private final int cacheSize;
+        private final long cacheTimeToLiveInMillis;
+        private final String cacheChannel;
+
+        private final int asyncThreads;
+        private final int asyncQueueSize;
+
+        private final int batchParallelThreshold;
+
+        private final boolean dirtyCheckEnabled;
+        private final int dirtyCheckSize;
+
+        private final boolean sentinelEnabled;
+        private final String master;
+        private final Set<String> sentinelList;
+
+        private final boolean replicaReadEnabled;
+        private final long replicaDiscoveryInMillis;
+        private final long replicaReadYourWritesInMillis;
+        private final boolean replicaFallbackEnabled;
+        private final int replicaTrackingSize;
+
+        private final boolean clusterEnabled;
+        private final Set<HostAndPort> clusterNodes;
+        private final int clusterMaxAttempts;
+
+        private final boolean offHeapEnabled;
+        private final int offHeapCapacityInMegabytes;
+        private final int offHeapStripes;
+        private final int offHeapTickInMillis;
+        private final int offHeapWheelSize;
+
+        private final int poolMaxTotal;
+        private final int poolMaxIdle;
+        private final int poolMinIdle;
+        private final long poolMaxWaitInMillis;
+        private final boolean poolTestOnBorrow;
+        private final boolean poolTestWhileIdle;
+        private final long poolEvictionIntervalInMillis;
+        private final long poolEvictableIdleInMillis;
+
+        private final int connectionTimeoutInMillis;
+        private final int socketTimeoutInMillis;
+
+        private Snapshot(final Properties properties) {
+            this.properties = properties;
+
+            reloadEnabled = getBoolean(EXTERNAL_SESSION_RELOAD, RELOAD_DEFAULT);
+
+            redisServerHost = properties.getProperty(REDIS_HOST_CONFIG_KEY, REDIS_HOST_DEFAULT);
+            redisServerPort = getInteger(REDIS_PORT_CONFIG_KEY, REDIS_PORT_DEFAULT, 1, 65535);
+            sessionEncryptionEnabled = getBoolean(REDIS_SESSION_ENCRYPTION_KEY, REDIS_ENCRYPTION_DEFAULT);
+
+            sessionEncryptionKey = properties.getProperty(SESSION_ENCRYPTION_KEY);
+            sessionEncryptionKeys = parseEncryptionKeys();
+            sessionEncryptionKeyId = getInteger(SESSION_ENCRYPTION_KEY_ID, ENCRYPTION_KEY_ID_DEFAULT, 0, MAXIMUM_KEY_ID);
+            sessionAuthenticationKey = properties.getProperty(SESSION_AUTHENTICATION_KEY);
+
+            sessionTimeoutInSeconds = getInteger(SESSION_TIMEOUT_SECONDS, null, 1, Integer.MAX_VALUE);
+
+            sessionIdGenerator = properties.getProperty(SESSION_ID_GENERATOR_KEY, ID_GENERATOR_DEFAULT).trim();
+            // Fewer than 16 random bytes (128 bits) would make session identifiers guessable.
+            sessionIdBytes = getInteger(SESSION_ID_BYTES_KEY, ID_BYTES_DEFAULT, 16, 64);
+            sessionIdPrefix = properties.getProperty(SESSION_ID_PREFIX_KEY, ID_PREFIX_DEFAULT).trim();
+
+            timeoutRefreshThresholdInSeconds = getInteger(SESSION_REFRESH_THRESHOLD_KEY, REFRESH_THRESHOLD_DEFAULT, 0, sessionTimeoutInSeconds - 1);
+            timeoutRefreshBatchInMillis = getInteger(SESSION_REFRESH_BATCH_KEY, REFRESH_BATCH_DEFAULT, 1, Integer.MAX_VALUE);
+            timeoutRefreshTrackingSize = getInteger(SESSION_REFRESH_TRACKING_KEY, REFRESH_TRACKING_DEFAULT, 1, Integer.MAX_VALUE);
+
+            compressionEnabled = getBoolean(SESSION_COMPRESSION_KEY, COMPRESSION_DEFAULT);
+            compressionThreshold = getInteger(SESSION_COMPRESSION_SIZE_KEY, COMPRESSION_SIZE_DEFAULT, 0, Integer.MAX_VALUE);
+            compressionLevel = getInteger(SESSION_COMPRESSION_LEVEL_KEY, COMPRESSION_LEVEL_DEFAULT, 0, 9);
+            compressionMaximum = getInteger(SESSION_COMPRESSION_MAX_KEY, COMPRESSION_MAX_DEFAULT, Math.max(compressionThreshold, 1), Integer.MAX_VALUE);
+
+            metricsJmxEnabled = getBoolean(SESSION_METRICS_JMX_KEY, METRICS_JMX_DEFAULT);
+
+            cacheEnabled = getBoolean(SESSION_CACHE_ENABLED_KEY, CACHE_ENABLED_DEFAULT);
+            cacheSize = getInteger(SESSION_CACHE_SIZE_KEY, CACHE_SIZE_DEFAULT, 1, Integer.MAX_VALUE);
+            cacheTimeToLiveInMillis = getInteger(SESSION_CACHE_TTL_KEY, CACHE_TTL_DEFAULT, 0, Integer.MAX_VALUE);
+            cacheChannel = properties.getProperty(SESSION_CACHE_CHANNEL_KEY, CACHE_CHANNEL_DEFAULT);
+
+            asyncThreads = getInteger(SESSION_ASYNC_THREADS_KEY, ASYNC_THREADS_DEFAULT, 1, Integer.MAX_VALUE);
+            asyncQueueSize = getInteger(SESSION_ASYNC_QUEUE_KEY, ASYNC_QUEUE_DEFAULT, 1, Integer.MAX_VALUE);
+
+            batchParallelThreshold = getInteger(SESSION_BATCH_PARALLEL_KEY, BATCH_PARALLEL_DEFAULT, 1, Integer.MAX_VALUE);
+
+            dirtyCheckEnabled = getBoolean(SESSION_DIRTY_CHECK_KEY, DIRTY_CHECK_DEFAULT);
+            dirtyCheckSize = getInteger(SESSION_DIRTY_CHECK_SIZE_KEY, DIRTY_CHECK_SIZE_DEFAULT, 1, Integer.MAX_VALUE);
+
+            sentinelEnabled = getBoolean(REDIS_SENTINEL_ENABLED_KEY, REDIS_ENABLED_DEFAULT);
+            master = properties.getProperty(REDIS_SENTINEL_MASTER_KEY, REDIS_MASTER_DEFAULT);
+            sentinelList = parseSentinelList();
+
+            replicaReadEnabled = getBoolean(REDIS_REPLICA_READ_KEY, REPLICA_READ_DEFAULT);
+            replicaDiscoveryInMillis = getInteger(REDIS_REPLICA_DISCOVERY_KEY, REPLICA_DISCOVERY_DEFAULT, 1, Integer.MAX_VALUE);
+            replicaReadYourWritesInMillis = getInteger(REDIS_REPLICA_RYW_KEY, REPLICA_RYW_DEFAULT, 0, Integer.MAX_VALUE);
+            replicaFallbackEnabled = getBoolean(REDIS_REPLICA_FALLBACK_KEY, REPLICA_FALLBACK_DEFAULT);
+            replicaTrackingSize = getInteger(REDIS_REPLICA_TRACKING_KEY, REPLICA_TRACKING_DEFAULT, 1, Integer.MAX_VALUE);
+
+            clusterEnabled = getBoolean(REDIS_CLUSTER_ENABLED_KEY, CLUSTER_ENABLED_DEFAULT);
+            clusterNodes = parseClusterNodes();
+            clusterMaxAttempts = getInteger(REDIS_CLUSTER_ATTEMPTS_KEY, CLUSTER_ATTEMPTS_DEFAULT, 1, Integer.MAX_VALUE);
+
+            offHeapEnabled = getBoolean(OFF_HEAP_ENABLED_KEY, OFF_HEAP_ENABLED_DEFAULT);
+            offHeapCapacityInMegabytes = getInteger(OFF_HEAP_CAPACITY_KEY, OFF_HEAP_CAPACITY_DEFAULT, 1, Integer.MAX_VALUE);
+            offHeapStripes = getInteger(OFF_HEAP_STRIPES_KEY, OFF_HEAP_STRIPES_DEFAULT, 1, 1 << 16);
+            offHeapTickInMillis = getInteger(OFF_HEAP_TICK_KEY, OFF_HEAP_TICK_DEFAULT, 1, Integer.MAX_VALUE);
+            offHeapWheelSize = getInteger(OFF_HEAP_WHEEL_KEY, OFF_HEAP_WHEEL_DEFAULT, 2, 1 << 20);
+
+            poolMaxTotal = getInteger(REDIS_POOL_MAX_TOTAL_KEY, POOL_MAX_TOTAL_DEFAULT, 1, Integer.MAX_VALUE);
+            poolMaxIdle = getInteger(REDIS_POOL_MAX_IDLE_KEY, POOL_MAX_IDLE_DEFAULT, 0, poolMaxTotal);
+            poolMinIdle = getInteger(REDIS_POOL_MIN_IDLE_KEY, POOL_MIN_IDLE_DEFAULT, 0, poolMaxIdle);
+            poolMaxWaitInMillis = getInteger(REDIS_POOL_MAX_WAIT_KEY, POOL_MAX_WAIT_DEFAULT, 0, Integer.MAX_VALUE);
+            poolTestOnBorrow = getBoolean(REDIS_POOL_TEST_BORROW_KEY, POOL_TEST_BORROW_DEFAULT);
+            poolTestWhileIdle = getBoolean(REDIS_POOL_TEST_IDLE_KEY, POOL_TEST_IDLE_DEFAULT);
+            poolEvictionIntervalInMillis = getInteger(REDIS_POOL_EVICTION_RUN_KEY, POOL_EVICTION_RUN_DEFAULT, -1, Integer.MAX_VALUE);
+            poolEvictableIdleInMillis = getInteger(REDIS_POOL_EVICTABLE_IDLE_KEY, POOL_EVICTABLE_IDLE_DEFAULT, -1, Integer.MAX_VALUE);
+
+            connectionTimeoutInMillis = getInteger(REDIS_CONNECT_TIMEOUT_KEY, CONNECT_TIMEOUT_DEFAULT, 1, Integer.MAX_VALUE);
+            socketTimeoutInMillis = getInteger(REDIS_SOCKET_TIMEOUT_KEY, SOCKET_TIMEOUT_DEFAULT, 1, Integer.MAX_VALUE);
+
+            // Warming more connections than the pool may hold would wait for ever.
+            startupConnections = getInteger(SESSION_STARTUP_CONNECTIONS_KEY, STARTUP_CONNECTIONS_DEFAULT, 0, poolMaxTotal);
+            shutdownTimeoutInMillis = getInteger(SESSION_SHUTDOWN_TIMEOUT_KEY, SHUTDOWN_TIMEOUT_DEFAULT, 0, Integer.MAX_VALUE);
+
+            operationBudgetInMillis = getInteger(SESSION_BUDGET_KEY, BUDGET_DEFAULT, 0, Integer.MAX_VALUE);
+
+            cookieName = properties.getProperty(COOKIE_NAME_KEY, COOKIE_NAME_DEFAULT).trim();
+            cookiePath = properties.getProperty(COOKIE_PATH_KEY, COOKIE_PATH_DEFAULT).trim();
+            cookieSecure = getBoolean(COOKIE_SECURE_KEY, COOKIE_SECURE_DEFAULT);
+            cookieHttpOnly = getBoolean(COOKIE_HTTP_ONLY_KEY, COOKIE_HTTP_ONLY_DEFAULT);
+
+            circuitEnabled = getBoolean(CIRCUIT_ENABLED_KEY, CIRCUIT_ENABLED_DEFAULT);
+            circuitWindowSize = getInteger(CIRCUIT_WINDOW_KEY, CIRCUIT_WINDOW_DEFAULT, 1, Integer.MAX_VALUE);
+            circuitMinimumCalls = getInteger(CIRCUIT_MINIMUM_KEY, CIRCUIT_MINIMUM_DEFAULT, 1, circuitWindowSize);
+            circuitFailureRatePercent = getInteger(CIRCUIT_FAILURE_RATE_KEY, CIRCUIT_FAILURE_RATE_DEFAULT, 1, 100);
+            circuitSlowRatePercent = getInteger(CIRCUIT_SLOW_RATE_KEY, CIRCUIT_SLOW_RATE_DEFAULT, 1, 100);
+            circuitSlowCallInMillis = getInteger(CIRCUIT_SLOW_CALL_KEY, CIRCUIT_SLOW_CALL_DEFAULT, 1, Integer.MAX_VALUE);
+            circuitOpenInMillis = getInteger(CIRCUIT_OPEN_KEY, CIRCUIT_OPEN_DEFAULT, 1, Integer.MAX_VALUE);
+            circuitHalfOpenCalls = getInteger(CIRCUIT_HALF_OPEN_KEY, CIRCUIT_HALF_OPEN_DEFAULT, 1, Integer.MAX_VALUE);
+
+            // Sessions are written with the current key, so it has to be one of the keyring.
+            if(sessionEncryptionEnabled && !sessionEncryptionKeys.containsKey(sessionEncryptionKeyId)) {
+                logger.error("Session management was badly configured: [{}={}]", SESSION_ENCRYPTION_KEY_ID, sessionEncryptionKeyId);
+                throw new IllegalArgumentException(SESSION_BAD_CONFIGURATION);
+            }
+        }
+
+        private boolean getBoolean(final String key, final String defaultValue) {
+            return Boolean.parseBoolean(properties.getProperty(key, defaultValue).trim());
+        }
+
+        private int getInteger(final String key, final String defaultValue, final int minimum, final int maximum) {
+            String value = properties.getProperty(key, defaultValue);
+            try {
+                int result = Integer.parseInt(String.valueOf(value).trim());
+                if(result >= minimum && result <= maximum) {
+                    return result;
+                }
+            } catch(NumberFormatException ex) {
+                logger.debug("Not a number: [{}]", value);
+            }
+
+            logger.error("Session management was badly configured: [{}={}]", key, value);
+            throw new IllegalArgumentException(SESSION_BAD_CONFIGURATION);
+        }
+
+        // The original (single) key is key zero, any further keys are numbered 1-255.
+        private Map<Integer, String> parseEncryptionKeys() {
+            Map<Integer, String> keys = new TreeMap<>();
+            if(sessionEncryptionKey != null) {
+                keys.put(0, checkEncryptionKey(SESSION_ENCRYPTION_KEY, sessionEncryptionKey));
+            }
+
+            for(String name : properties.stringPropertyNames()) {
+                if(name.startsWith(SESSION_ENCRYPTION_KEYS)) {
+                    keys.put(parseKeyId(name), checkEncryptionKey(name, properties.getProperty(name)));
+                }
+            }
+            return Collections.unmodifiableMap(keys);
+        }
+
+        // The keys are only used when sessions are encrypted, so are not checked otherwise.
+        private String checkEncryptionKey(final String key, final String value) {
+            if(!sessionEncryptionEnabled) {
+                return value;
+            }
+
+            int length = value.getBytes(StandardCharsets.UTF_8).length;
+            if(length != 16 && length != 24 && length != 32) {
+                logger.error("Session management was badly configured: [{}=({} byte(s))]", key, length);
+                throw new IllegalArgumentException(SESSION_BAD_CONFIGURATION);
+            }
+            return value;
+        }
+
+        private int parseKeyId(final String name) {
+            String value = name.substring(SESSION_ENCRYPTION_KEYS.length());
+            try {
+                int keyId = Integer.parseInt(value.trim());
+                if(keyId >= 1 && keyId <= MAXIMUM_KEY_ID) {
+                    return keyId;
+                }
+            } catch(NumberFormatException ex) {
+                logger.debug("Not a number: [{}]", value);
+            }
+
+            logger.error("Session management was badly configured: [{}]", name);
+            throw new IllegalArgumentException(SESSION_BAD_CONFIGURATION);
+        }
+
+        private Set<String> parseSentinelList() {
+            Set<String> list = new TreeSet<>();
+            String sentinels = properties.getProperty(REDIS_SENTINEL_LIST_KEY, REDIS_LIST_DEFAULT);
+            for(String instance : sentinels.split(REDIS_LIST_SEPARATOR)) {
+                list.add(instance);
+            }
+            return Collections.unmodifiableSet(list);
+        }
+
+        private Set<HostAndPort> parseClusterNodes() {
+            Set<HostAndPort> nodes = new LinkedHashSet<>();
+            String cluster = properties.getProperty(REDIS_CLUSTER_NODES_KEY, CLUSTER_NODES_DEFAULT);
+            for(String node : cluster.split(REDIS_LIST_SEPARATOR)) {
+                int separator = node.lastIndexOf(REDIS_PORT_SEPARATOR);
+                if(separator <= 0) {
+                    logger.error("Session management was badly configured: [{}={}]", REDIS_CLUSTER_NODES_KEY, cluster);
+                    throw new IllegalArgumentException(SESSION_BAD_CONFIGURATION);
+                }
+                nodes.add(new HostAndPort(node.substring(0, separator).trim(), Integer.parseInt(node.substring(separator + 1).trim())));
+            }
+            return Collections.unmodifiableSet(nodes);
+        }
+    }
 }
@@ -0,0 +1,41 @@
+/**
+ * This is the session connection pool interface, implemented by the Redis connection pools the
+ * session stores create, so their settings can be changed live and a connection can be borrowed
+ * within a caller's time budget. The pools differ only in how they find their server, so they
+ * share the borrowing and reconfiguring of their underlying pool through this interface.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.NoSuchElementException;
+
+interface SessionConnectionPool
+{
+    Jedis getResource(final long maxWaitMillis);
+
+    void reconfigure(final GenericObjectPoolConfig poolConfig);
+
+    static Jedis borrow(final GenericObjectPool<Jedis> internalPool, final long maxWaitMillis) {
+        try {
+            return internalPool.borrowObject(maxWaitMillis);
+
+        } catch(NoSuchElementException ex) {
+            throw new JedisException("Could not get a resource from the pool within " + maxWaitMillis + " ms", ex);
+
+        } catch(Exception ex) {
+            throw new JedisConnectionException("Could not get a resource from the pool", ex);
+        }
+    }
+
+    static void reconfigure(final GenericObjectPool<Jedis> internalPool, final GenericObjectPoolConfig poolConfig) {
+        internalPool.setConfig(poolConfig);
+    }
+}
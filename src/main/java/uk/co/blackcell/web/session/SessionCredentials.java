@@ -0,0 +1,50 @@
+/**
+ * This is the session credentials register, which decrypts the Redis credential held against
+ * each key store once, as key loading and RSA decryption are far too expensive to repeat for
+ * every facade or connection.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.blackcell.web.session.exceptions.SessionAuthenticationFailedException;
+import uk.co.blackcell.web.session.exceptions.SessionTechnicalException;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+final class SessionCredentials
+{
+    private static final Logger logger = LoggerFactory.getLogger(SessionCredentials.class);
+
+    // Decrypted credentials, keyed by key store path, so key loading happens once per path.
+    private static final ConcurrentMap<String, String> credentials = new ConcurrentHashMap<>();
+
+    private SessionCredentials() {
+        super();
+    }
+
+    static Optional<String> resolve(final Optional<String> keyPath) {
+        return keyPath.filter(path -> !path.isEmpty()).map(SessionCredentials::resolve);
+    }
+
+    private static String resolve(final String keyPath) {
+        return credentials.computeIfAbsent(keyPath, path -> {
+            logger.debug("Loading authentication credentials from key store [{}]...", path);
+            try {
+                SessionAuthenticator authenticator = new SessionAuthenticator(path);
+                authenticator.authenticate();
+
+                return authenticator.getAuthenticationKey();
+
+            } catch(SessionAuthenticationFailedException ex) {
+                logger.error("Session failed to authenticate properly: " + ex.toString());
+                throw new SessionTechnicalException(ex);
+            }
+        });
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * This is the session deadline, the time budget of the session operation running on the
+ * current thread. Waits on the way to Redis (such as borrowing a pooled connection) are bounded
+ * by what remains of the budget, rather than their own, much longer, configured maximums. Time
+ * spent on the socket, once a connection has been borrowed, is bounded by the socket timeout.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+
+final class SessionDeadline
+{
+    private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<>();
+
+    private SessionDeadline() {
+        super();
+    }
+
+    static long after(final long budgetMillis) {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+    }
+
+    // Starts a budget unless one is already running (for example, set when a request was queued).
+    static boolean begin(final long budgetMillis) {
+        if(budgetMillis <= 0 || DEADLINE.get() != null) {
+            return false;
+        }
+        DEADLINE.set(after(budgetMillis));
+        return true;
+    }
+
+    // Work handed to another thread takes the deadline with it.
+    static OptionalLong get() {
+        Long deadline = DEADLINE.get();
+        return (deadline == null) ? OptionalLong.empty() : OptionalLong.of(deadline);
+    }
+
+    static void set(final long deadlineNanos) {
+        DEADLINE.set(deadlineNanos);
+    }
+
+    static void clear() {
+        DEADLINE.remove();
+    }
+
+    static OptionalLong remainingMillis() {
+        Long deadline = DEADLINE.get();
+        if(deadline == null) {
+            return OptionalLong.empty();
+        }
+        return OptionalLong.of(TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+}
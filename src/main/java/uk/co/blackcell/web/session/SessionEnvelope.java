@@ -0,0 +1,125 @@
+/**
+ * This is the session envelope, which describes the binary format of a stored session. An
+ * enveloped value starts with a marker byte and a flags byte, followed by the payload. The
+ * marker (0xFF) never appears in UTF-8 or Base64 text, so values written before the binary
+ * format was introduced are recognised as legacy (un-enveloped) data.
+ *
+ * A versioned value carries its 8-byte (big-endian) version between the flags and the payload,
+ * in the clear, so the store can compare versions without decoding the session.
+ *
+ * A keyed (encrypted) payload starts with the identifier of the key it was encrypted with and
+ * the random initialisation vector used, so that keys can be rotated without a restart.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import java.nio.ByteBuffer;
+
+final class SessionEnvelope
+{
+    static final byte MARKER                        = (byte)0xFF;
+
+    static final byte FLAG_NONE                     = 0x00;
+    static final byte FLAG_ENCRYPTED                = 0x01;
+    static final byte FLAG_COMPRESSED               = 0x02;
+    static final byte FLAG_VERSIONED                = 0x04;
+    static final byte FLAG_KEYED                    = 0x08;
+
+    static final int HEADER_LENGTH                  = 2;
+    static final int VERSION_LENGTH                 = 8;
+    static final int KEY_ID_LENGTH                  = 1;
+
+    private SessionEnvelope() {
+        super();
+    }
+
+    static byte[] wrap(final byte flags, final byte[] payload) {
+        byte[] enveloped = new byte[HEADER_LENGTH + payload.length];
+
+        enveloped[0] = MARKER;
+        enveloped[1] = flags;
+
+        System.arraycopy(payload, 0, enveloped, HEADER_LENGTH, payload.length);
+
+        return enveloped;
+    }
+
+    static byte[] wrap(final byte flags, final int keyId, final byte[] vector, final byte[] payload) {
+        return ByteBuffer.allocate(HEADER_LENGTH + KEY_ID_LENGTH + vector.length + payload.length)
+                .put(MARKER)
+                .put((byte)(flags | FLAG_KEYED))
+                .put((byte)keyId)
+                .put(vector)
+                .put(payload)
+                .array();
+    }
+
+    static boolean isWrapped(final byte[] stored) {
+        return stored.length >= HEADER_LENGTH && stored[0] == MARKER;
+    }
+
+    static boolean hasFlag(final byte[] stored, final byte flag) {
+        return (stored[1] & flag) != 0;
+    }
+
+    static boolean isVersioned(final byte[] stored) {
+        return isWrapped(stored) && hasFlag(stored, FLAG_VERSIONED) && stored.length >= HEADER_LENGTH + VERSION_LENGTH;
+    }
+
+    static boolean isKeyed(final byte[] stored) {
+        return isWrapped(stored) && hasFlag(stored, FLAG_KEYED);
+    }
+
+    // The key identifier follows the version, when the value is versioned.
+    static int getKeyId(final byte[] stored) {
+        return stored[HEADER_LENGTH + (isVersioned(stored) ? VERSION_LENGTH : 0)] & 0xFF;
+    }
+
+    // Values written without a version (including legacy values) are at version zero.
+    static long getVersion(final byte[] stored) {
+        return isVersioned(stored) ? ByteBuffer.wrap(stored, HEADER_LENGTH, VERSION_LENGTH).getLong() : 0L;
+    }
+
+    static long getVersion(final ByteBuffer stored) {
+        if(stored.limit() < HEADER_LENGTH + VERSION_LENGTH || stored.get(0) != MARKER || (stored.get(1) & FLAG_VERSIONED) == 0) {
+            return 0L;
+        }
+        return stored.getLong(HEADER_LENGTH);
+    }
+
+    static byte[] toVersion(final long version) {
+        return ByteBuffer.allocate(VERSION_LENGTH).putLong(version).array();
+    }
+
+    static byte[] withVersion(final byte[] encoded, final long version) {
+        byte[] wrapped = isWrapped(encoded) ? encoded : wrap(FLAG_NONE, encoded);
+
+        return ByteBuffer.allocate(wrapped.length + VERSION_LENGTH)
+                .put(MARKER)
+                .put((byte)(wrapped[1] | FLAG_VERSIONED))
+                .putLong(version)
+                .put(wrapped, HEADER_LENGTH, wrapped.length - HEADER_LENGTH)
+                .array();
+    }
+
+    static byte[] withoutVersion(final byte[] stored) {
+        byte[] wrapped = new byte[stored.length - VERSION_LENGTH];
+
+        wrapped[0] = MARKER;
+        wrapped[1] = (byte)(stored[1] & ~FLAG_VERSIONED);
+
+        System.arraycopy(stored, HEADER_LENGTH + VERSION_LENGTH, wrapped, HEADER_LENGTH, wrapped.length - HEADER_LENGTH);
+
+        return wrapped;
+    }
+
+    static byte[] unwrap(final byte[] stored) {
+        byte[] payload = new byte[stored.length - HEADER_LENGTH];
+
+        System.arraycopy(stored, HEADER_LENGTH, payload, 0, payload.length);
+
+        return payload;
+    }
+}
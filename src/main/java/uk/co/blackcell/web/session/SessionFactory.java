@@ -7,35 +7,143 @@
  */
 package uk.co.blackcell.web.session;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static uk.co.blackcell.web.session.constants.SessionConstants.SESSION_BAD_CONFIGURATION;
 
 class SessionFactory
 {
+    private static final Logger logger = LoggerFactory.getLogger(SessionFactory.class);
+
+    private static final String ID_GENERATOR_KEY            = "session.id.generator";
+
+    private static final String RANDOM_ID_GENERATOR         = "random";
+    private static final String UUID_ID_GENERATOR           = "uuid";
+
+    private static final SessionFactory INSTANCE = new SessionFactory();
+
+    // Facades are thread-safe, so one is built for each key path and shared by every caller.
+    private final ConcurrentMap<Optional<String>, ISessionFacade> sessions = new ConcurrentHashMap<>();
+
     private SessionFactory() {
         super();
     }
 
-    static synchronized SessionFactory getFactory() {
-        return new SessionFactory();
+    static SessionFactory getFactory() {
+        return INSTANCE;
     }
 
     private Boolean isSessionEncrypted() {
         return SessionConfig.getInstance().isSessionEncryptionEnabled();
     }
 
-    private ISessionFacade getEncryptedSession(Optional<String> keyPath) {
-        return new RedisSessionManagerEncryptedImpl(keyPath);
+    private Boolean isSessionCached() {
+        return SessionConfig.getInstance().isCacheEnabled();
+    }
+
+    private Boolean isSessionDirtyChecked() {
+        return SessionConfig.getInstance().isDirtyCheckEnabled();
+    }
+
+    private Boolean isSessionCircuitBroken() {
+        return SessionConfig.getInstance().isCircuitEnabled();
+    }
+
+    private Boolean isSessionClustered() {
+        return SessionConfig.getInstance().isClusterEnabled();
+    }
+
+    private Boolean isSessionOffHeap() {
+        return SessionConfig.getInstance().isOffHeapEnabled();
+    }
+
+    SessionStore getStore(Optional<String> keyPath) {
+        if(isSessionOffHeap()) {
+            return OffHeapSessionStore.getInstance();
+        }
+
+        Optional<String> credential = SessionCredentials.resolve(keyPath);
+
+        return (isSessionClustered()) ? RedisClusterStore.getInstance(credential) : new RedisPooledStore(credential);
+    }
+
+    private AbstractSessionFacade getEncryptedSession(SessionStore store) {
+        return new RedisSessionManagerEncryptedImpl(store);
     }
 
-    private ISessionFacade getUnencryptedSession(Optional<String> keyPath) {
-        return new RedisSessionManagerNonEncryptedImpl(keyPath);
+    private AbstractSessionFacade getUnencryptedSession(SessionStore store) {
+        return new RedisSessionManagerNonEncryptedImpl(store);
+    }
+
+    AbstractSessionFacade getStoredSession(SessionStore store) {
+        return (isSessionEncrypted()) ? getEncryptedSession(store) : getUnencryptedSession(store);
+    }
+
+    ISessionFacade decorate(AbstractSessionFacade session) {
+        // The breaker sits beneath the near-cache, so cached sessions are still served while it is open.
+        ISessionFacade guarded = (isSessionCircuitBroken()) ? new CircuitBreakingSessionFacade(session) : session;
+
+        // Sessions held in-process are already local, so are never near-cached.
+        ISessionFacade cached = (isSessionCached() && !isSessionOffHeap()) ? new NearCacheSessionFacade(guarded, session) : guarded;
+
+        if(!isSessionDirtyChecked()) {
+            return cached;
+        }
+
+        // Changes announced by other nodes evict their fingerprints; in-process sessions have none.
+        Optional<SessionNearCache> invalidations = (isSessionOffHeap())
+                ? Optional.empty() : Optional.of(SessionNearCache.getInstance(session.getStore()));
+
+        return new DirtyCheckingSessionFacade(cached, invalidations);
     }
 
     private ISessionFacade getRedisSession(Optional<String> keyPath) {
-        return (isSessionEncrypted()) ? getEncryptedSession(keyPath) : getUnencryptedSession(keyPath);
+        return decorate(getStoredSession(getStore(keyPath)));
     }
 
     public ISessionFacade getSession(Optional<String> keyPath) {
-        return getRedisSession(keyPath);
+        return sessions.computeIfAbsent(keyPath, this::getRedisSession);
+    }
+
+    void putSession(Optional<String> keyPath, ISessionFacade session) {
+        sessions.put(keyPath, session);
+    }
+
+    // Once the stores have been closed, their facades must not be handed out again.
+    void clearSessions() {
+        sessions.clear();
+    }
+
+    SessionIdGenerator getIdGenerator() {
+        SessionConfig config = SessionConfig.getInstance();
+
+        String generator = config.getSessionIdGenerator();
+        switch(generator) {
+            case RANDOM_ID_GENERATOR:
+                return withIdPrefix(new RandomSessionIdGenerator(config.getSessionIdBytes()));
+
+            case UUID_ID_GENERATOR:
+                return withIdPrefix(new UuidSessionIdGenerator());
+
+            default:
+                try {
+                    return withIdPrefix(Class.forName(generator).asSubclass(SessionIdGenerator.class).newInstance());
+
+                } catch(ReflectiveOperationException | ClassCastException ex) {
+                    logger.error("Session management was badly configured: [{}={}]", ID_GENERATOR_KEY, generator);
+                    throw new IllegalArgumentException(SESSION_BAD_CONFIGURATION, ex);
+                }
+        }
+    }
+
+    SessionIdGenerator withIdPrefix(final SessionIdGenerator generator) {
+        String prefix = SessionConfig.getInstance().getSessionIdPrefix();
+
+        return (prefix.isEmpty()) ? generator : () -> prefix + generator.generate();
     }
 }
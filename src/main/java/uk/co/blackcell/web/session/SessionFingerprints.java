@@ -0,0 +1,165 @@
+/**
+ * This is the session fingerprint register, which remembers a cheap 64-bit fingerprint of the
+ * data last read or written for each session on this node. The register is bounded, and the
+ * least recently used fingerprints are discarded first. A session marked as stale (for example,
+ * read with a retired encryption key) is never reported as unchanged until it is next written.
+ * A fingerprint is evicted when another node announces a change to its session, and is only
+ * recorded if no such change was announced while its session was being read or written.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+final class SessionFingerprints
+{
+    private static final Logger logger = LoggerFactory.getLogger(SessionFingerprints.class);
+
+    // FNV-1a (64-bit) offset basis and prime.
+    private static final long FNV_OFFSET_BASIS              = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME                     = 0x100000001b3L;
+
+    private static final int GENERATION_STRIPES             = 1024;
+
+    private static volatile SessionFingerprints instance;
+
+    private final Map<String, Long> fingerprints;
+    private final Set<String> stale;
+
+    private final LongAdder writesAvoided = new LongAdder();
+
+    // Advanced by every eviction, for each stripe of sessions.
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    private SessionFingerprints(final int maximumSize) {
+        logger.debug("SessionFingerprints({}) constructor.", maximumSize);
+
+        this.fingerprints = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maximumSize;
+            }
+        };
+        this.stale = Collections.newSetFromMap(new LinkedHashMap<String, Boolean>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maximumSize;
+            }
+        });
+    }
+
+    static synchronized SessionFingerprints getInstance() {
+        if(instance == null) {
+            instance = new SessionFingerprints(SessionConfig.getInstance().getDirtyCheckSize());
+        }
+        return instance;
+    }
+
+    static long getWritesAvoided() {
+        SessionFingerprints register = instance;
+        return (register == null) ? 0 : register.writesAvoided.sum();
+    }
+
+    long generation(final String sessionID) {
+        return generations.get(stripe(sessionID));
+    }
+
+    // The generation is that taken before the session was read.
+    void record(final String sessionID, final byte[] data, final long generation) {
+        long fingerprint = fingerprint(data);
+        synchronized (fingerprints) {
+            if(generations.get(stripe(sessionID)) == generation) {
+                fingerprints.put(sessionID, fingerprint);
+            }
+        }
+    }
+
+    // The generation is that taken before the session was written.
+    void written(final String sessionID, final byte[] data, final long generation) {
+        long fingerprint = fingerprint(data);
+        synchronized (fingerprints) {
+            if(generations.get(stripe(sessionID)) == generation) {
+                fingerprints.put(sessionID, fingerprint);
+            } else {
+                fingerprints.remove(sessionID);
+            }
+            stale.remove(sessionID);
+        }
+    }
+
+    // Only the sessions of a register in use need to be marked, as no other is dirty checked.
+    static void markStale(final String sessionID) {
+        SessionFingerprints register = instance;
+        if(register != null) {
+            synchronized (register.fingerprints) {
+                register.stale.add(sessionID);
+            }
+        }
+    }
+
+    boolean isUnchanged(final String sessionID, final byte[] data) {
+        Long recorded;
+        synchronized (fingerprints) {
+            recorded = stale.contains(sessionID) ? null : fingerprints.get(sessionID);
+        }
+        return recorded != null && recorded == fingerprint(data);
+    }
+
+    void remove(final String sessionID) {
+        synchronized (fingerprints) {
+            fingerprints.remove(sessionID);
+            stale.remove(sessionID);
+        }
+    }
+
+    static void evict(final String sessionID) {
+        SessionFingerprints register = instance;
+        if(register != null) {
+            synchronized (register.fingerprints) {
+                register.generations.incrementAndGet(stripe(sessionID));
+                register.fingerprints.remove(sessionID);
+            }
+        }
+    }
+
+    // Changes announced while the invalidation channel was lost may have been missed.
+    static void evictAll() {
+        SessionFingerprints register = instance;
+        if(register != null) {
+            synchronized (register.fingerprints) {
+                for(int stripe = 0; stripe < GENERATION_STRIPES; stripe++) {
+                    register.generations.incrementAndGet(stripe);
+                }
+                register.fingerprints.clear();
+                register.stale.clear();
+            }
+        }
+    }
+
+    void writesAvoided(final long count) {
+        writesAvoided.add(count);
+    }
+
+    private static int stripe(final String sessionID) {
+        return sessionID.hashCode() & (GENERATION_STRIPES - 1);
+    }
+
+    static long fingerprint(final byte[] data) {
+        long hash = FNV_OFFSET_BASIS;
+        for(byte value : data) {
+            hash ^= (value & 0xFF);
+            hash *= FNV_PRIME;
+        }
+        return hash ^ data.length;
+    }
+}
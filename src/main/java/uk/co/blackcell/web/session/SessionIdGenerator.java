@@ -0,0 +1,14 @@
+/**
+ * This is the session identifier generator, through which an application may supply its own
+ * session identifiers. Generators are called concurrently, so must be thread-safe, and every
+ * identifier must be unguessable: it is the only credential a session has.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+public interface SessionIdGenerator
+{
+    String generate();
+}
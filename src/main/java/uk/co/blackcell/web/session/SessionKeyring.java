@@ -0,0 +1,90 @@
+/**
+ * This is the session keyring, which holds a cipher for each active encryption key, by its
+ * identifier, and which of them is current. Sessions are always encrypted with the current
+ * key, and may be decrypted with any active key, so a new key can be introduced and made
+ * current, and the old key retired once the sessions written with it have expired.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.spec.IvParameterSpec;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.SecureRandom;
+import java.util.Map;
+
+final class SessionKeyring
+{
+    private static final Logger logger = LoggerFactory.getLogger(SessionKeyring.class);
+
+    static final int LEGACY_KEY_ID                  = 0;
+
+    // Each thread has its own generator, so encryption does not contend on a shared lock.
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(SecureRandom::new);
+
+    private static volatile SessionKeyring instance;
+
+    private final SessionCipher[] ciphers = new SessionCipher[256];
+    private final int currentKeyId;
+
+    SessionKeyring(final Map<Integer, String> keys, final int currentKeyId) {
+        logger.debug("SessionKeyring({} key(s), {}) constructor.", keys.size(), currentKeyId);
+
+        keys.forEach((keyId, key) -> ciphers[keyId] = new SessionCipher(key.getBytes(StandardCharsets.UTF_8)));
+
+        this.currentKeyId = currentKeyId;
+    }
+
+    static SessionKeyring getInstance() {
+        SessionKeyring keyring = instance;
+        return (keyring == null) ? create() : keyring;
+    }
+
+    private static synchronized SessionKeyring create() {
+        if(instance == null) {
+            SessionConfig config = SessionConfig.getInstance();
+
+            instance = fromConfig(config);
+
+            // A reloaded configuration may add, retire or change the current key.
+            config.addListener(() -> instance = fromConfig(config));
+        }
+        return instance;
+    }
+
+    private static SessionKeyring fromConfig(final SessionConfig config) {
+        return new SessionKeyring(config.getSessionEncryptionKeys(), config.getSessionEncryptionKeyId());
+    }
+
+    int getCurrentKeyId() {
+        return currentKeyId;
+    }
+
+    SessionCipher getCurrent() {
+        return ciphers[currentKeyId];
+    }
+
+    SessionCipher get(final int keyId) throws InvalidKeyException {
+        SessionCipher cipher = ciphers[keyId];
+        if(cipher == null) {
+            throw new InvalidKeyException("Session encryption key is not active: " + keyId);
+        }
+        return cipher;
+    }
+
+    boolean isCurrent(final int keyId) {
+        return keyId == currentKeyId;
+    }
+
+    static IvParameterSpec nextVector() {
+        byte[] vector = new byte[SessionCipher.VECTOR_LENGTH];
+        RANDOM.get().nextBytes(vector);
+
+        return new IvParameterSpec(vector);
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * This is a session latency (or size) histogram. Values are counted in power-of-two buckets,
+ * so recording is a lock-free increment regardless of how many threads are recording, at the
+ * cost of percentiles being accurate to within a factor of two.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+final class SessionLatencyHistogram
+{
+    private static final int BUCKETS                        = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+
+    private final LongAccumulator maximum = new LongAccumulator(Math::max, 0);
+
+    SessionLatencyHistogram() {
+        for(int index = 0; index < BUCKETS; index++) {
+            buckets[index] = new LongAdder();
+        }
+    }
+
+    void record(final long value) {
+        long sample = Math.max(0, value);
+
+        buckets[BUCKETS - Long.numberOfLeadingZeros(sample)].increment();
+        count.increment();
+        total.add(sample);
+        maximum.accumulate(sample);
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    long getTotal() {
+        return total.sum();
+    }
+
+    long getMaximum() {
+        return maximum.get();
+    }
+
+    double getMean() {
+        long samples = count.sum();
+        return (samples == 0) ? 0.0 : (double)total.sum() / samples;
+    }
+
+    long getPercentile(final double percentile) {
+        long[] counts = new long[BUCKETS];
+
+        long samples = 0;
+        for(int index = 0; index < BUCKETS; index++) {
+            counts[index] = buckets[index].sum();
+            samples += counts[index];
+        }
+        if(samples == 0) {
+            return 0;
+        }
+
+        // The upper bound of the bucket holding the requested rank is reported.
+        long rank = (long)Math.ceil(samples * percentile / 100.0);
+        long seen = 0;
+        for(int index = 0; index < BUCKETS; index++) {
+            seen += counts[index];
+            if(seen >= rank) {
+                return (index == 0) ? 0 : Math.min(getMaximum(), (index == BUCKETS - 1) ? Long.MAX_VALUE : (1L << index) - 1);
+            }
+        }
+        return getMaximum();
+    }
+}
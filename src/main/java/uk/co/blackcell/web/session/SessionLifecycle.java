@@ -0,0 +1,79 @@
+/**
+ * This is the session lifecycle, which an application calls as it starts and stops (for
+ * example, from a Play module's eager binding and its application lifecycle stop hook).
+ *
+ * Starting creates the connection pool (or discovers the Sentinel master or cluster nodes),
+ * opens and authenticates connections, loads the keys and initialises the cipher path, so the
+ * first requests after a deploy are served at normal latency. Stopping rejects new asynchronous
+ * requests, completes those in flight, flushes pending timeout refreshes and closes every pool.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+public final class SessionLifecycle
+{
+    private static final Logger logger = LoggerFactory.getLogger(SessionLifecycle.class);
+
+    private SessionLifecycle() {
+        super();
+    }
+
+    public static void start() {
+        start(Optional.empty());
+    }
+
+    public static void start(final String keyPath) {
+        start(Optional.of(keyPath));
+    }
+
+    public static synchronized void stop() {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(SessionConfig.getInstance().getShutdownTimeoutInMillis());
+
+        logger.info("Stopping session management...");
+
+        SessionFactory.getFactory().clearSessions();
+        AsyncSessionFacade.shutdown(deadline);
+
+        // The subscription and final refreshes need connections, so are ended before pools close.
+        SessionNearCache.shutdown();
+        SessionTimeoutRefresher.shutdown();
+
+        RedisPooledStore.shutdown(deadline);
+        RedisClusterStore.shutdown(deadline);
+        OffHeapSessionStore.shutdown();
+
+        logger.info("Session management stopped in {} ms.", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private static synchronized void start(final Optional<String> keyPath) {
+        long start = System.nanoTime();
+
+        logger.info("Starting session management...");
+
+        SessionConfig config = SessionConfig.getInstance();
+        SessionFactory factory = SessionFactory.getFactory();
+
+        // A store shut down by an earlier stop is opened again.
+        RedisPooledStore.open();
+
+        SessionStore store = factory.getStore(keyPath);
+        store.warmUp(config.getStartupConnections());
+
+        AbstractSessionFacade session = factory.getStoredSession(store);
+        session.warmUp();
+
+        factory.putSession(keyPath, factory.decorate(session));
+        AsyncSessionFacade.prestart();
+
+        logger.info("Session management started in {} ms.", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+}
@@ -13,15 +13,25 @@ import org.slf4j.LoggerFactory;
 import uk.co.blackcell.web.session.exceptions.SessionNotFoundException;
 import uk.co.blackcell.web.session.exceptions.SessionNotPersistedException;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.concurrent.CompletionStage;
 
 public class SessionManager
 {
     private static final Logger logger = LoggerFactory.getLogger(SessionManager.class);
 
+    private static volatile SessionIdGenerator idGenerator;
+
     private ISessionFacade session;
 
+    private AsyncSessionFacade asyncSession;
+
     public SessionManager() {
         logger.debug("SessionManager() constructor.");
 
@@ -38,11 +48,26 @@ public class SessionManager
         logger.debug("Initialise({}) method called...", keyPath);
 
         session = SessionFactory.getFactory().getSession(keyPath);
-
+        asyncSession = new AsyncSessionFacade(session);
     }
 
     public static String generateID() {
-        return UUID.randomUUID().toString();
+        SessionIdGenerator generator = idGenerator;
+        if(generator == null) {
+            synchronized (SessionManager.class) {
+                if(idGenerator == null) {
+                    idGenerator = SessionFactory.getFactory().getIdGenerator();
+                }
+                generator = idGenerator;
+            }
+        }
+        return generator.generate();
+    }
+
+    public static void setIdGenerator(final SessionIdGenerator generator) {
+        logger.debug("setIdGenerator({}) method called...", generator.getClass().getName());
+
+        idGenerator = SessionFactory.getFactory().withIdPrefix(generator);
     }
 
     public void ping(final String sessionID) {
@@ -57,7 +82,100 @@ public class SessionManager
         return session.getData(sessionID);
     }
 
+    public void saveBytes(final String sessionID, final byte[] data) throws SessionNotPersistedException {
+        session.setBytes(sessionID, data);
+    }
+
+    public byte[] findBytes(final String sessionID) throws SessionNotFoundException {
+        return session.getBytes(sessionID);
+    }
+
+    public VersionedSession findVersioned(final String sessionID) throws SessionNotFoundException {
+        return session.getVersionedBytes(sessionID);
+    }
+
+    // Throws a SessionConflictException when the session was saved by someone else since it was read.
+    public long saveVersioned(final String sessionID, final String data, final long version) throws SessionNotPersistedException {
+        return session.setVersionedBytes(sessionID, data.getBytes(StandardCharsets.UTF_8), version);
+    }
+
+    public long saveBytesVersioned(final String sessionID, final byte[] data, final long version) throws SessionNotPersistedException {
+        return session.setVersionedBytes(sessionID, data, version);
+    }
+
     public void invalidate(final String sessionID) {
         session.invalidate(sessionID);
     }
+
+    public Map<String, String> findAll(final Collection<String> sessionIDs) {
+        Map<String, String> sessions = new LinkedHashMap<>();
+        session.getAllBytes(sessionIDs).forEach((sessionID, data) ->
+                sessions.put(sessionID, new String(data, StandardCharsets.UTF_8)));
+        return sessions;
+    }
+
+    public void saveAll(final Map<String, String> sessions) throws SessionNotPersistedException {
+        Map<String, byte[]> data = new LinkedHashMap<>();
+        sessions.forEach((sessionID, value) -> data.put(sessionID, value.getBytes(StandardCharsets.UTF_8)));
+        session.setAllBytes(data);
+    }
+
+    public void invalidateAll(final Collection<String> sessionIDs) {
+        session.invalidateAll(sessionIDs);
+    }
+
+    public Optional<String> getAttribute(final String sessionID, final String name) {
+        return Optional.ofNullable(getAttributes(sessionID, name).get(name));
+    }
+
+    public Map<String, String> getAttributes(final String sessionID, final String... names) {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        session.getAttributes(sessionID, Arrays.asList(names)).forEach((name, data) ->
+                attributes.put(name, new String(data, StandardCharsets.UTF_8)));
+        return attributes;
+    }
+
+    public void setAttribute(final String sessionID, final String name, final String value) throws SessionNotPersistedException {
+        session.setAttributes(sessionID, Collections.singletonMap(name, value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public void removeAttribute(final String sessionID, final String name) {
+        session.removeAttributes(sessionID, Collections.singletonList(name));
+    }
+
+    public CompletionStage<Void> pingAsync(final String sessionID) {
+        return asyncSession.ping(sessionID);
+    }
+
+    public CompletionStage<Void> saveAsync(final String sessionID, final String data) {
+        return asyncSession.setData(sessionID, data);
+    }
+
+    public CompletionStage<String> findAsync(final String sessionID) {
+        return asyncSession.getData(sessionID);
+    }
+
+    public CompletionStage<Void> invalidateAsync(final String sessionID) {
+        return asyncSession.invalidate(sessionID);
+    }
+
+    public double getCacheHitRatio() {
+        return SessionNearCache.getCacheHitRatio();
+    }
+
+    public long getWritesAvoided() {
+        return SessionFingerprints.getWritesAvoided();
+    }
+
+    public SessionMetricsMXBean getMetrics() {
+        return SessionMetrics.getInstance();
+    }
+
+    public static void addMetricsListener(final SessionMetricsListener listener) {
+        SessionMetrics.getInstance().addListener(listener);
+    }
+
+    public static void removeMetricsListener(final SessionMetricsListener listener) {
+        SessionMetrics.getInstance().removeListener(listener);
+    }
 }
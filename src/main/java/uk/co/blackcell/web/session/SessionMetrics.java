@@ -0,0 +1,225 @@
+/**
+ * This is the session metrics register, which records the latency of every session operation,
+ * broken down into the time spent waiting for a pooled connection, the Redis round trip and
+ * encoding (encryption) or decoding, along with payload sizes, misses and errors. The metrics
+ * are published as a JMX MBean, and forwarded to any registered listeners.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.util.Pool;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+final class SessionMetrics implements SessionMetricsMXBean
+{
+    private static final Logger logger = LoggerFactory.getLogger(SessionMetrics.class);
+
+    static final String PING                        = "ping";
+    static final String GET                         = "get";
+    static final String SET                         = "set";
+    static final String INVALIDATE                  = "invalidate";
+    static final String TOUCH                       = "touch";
+    static final String GET_ALL                     = "getAll";
+    static final String SET_ALL                     = "setAll";
+    static final String INVALIDATE_ALL              = "invalidateAll";
+    static final String TOUCH_ALL                   = "touchAll";
+    static final String GET_ATTRIBUTES              = "getAttributes";
+    static final String SET_ATTRIBUTES              = "setAttributes";
+    static final String REMOVE_ATTRIBUTES           = "removeAttributes";
+    static final String GET_VERSIONED               = "getVersioned";
+    static final String SET_VERSIONED               = "setVersioned";
+
+    static final String POOL_BORROW                 = "pool.borrow";
+    static final String ROUND_TRIP                  = "redis.roundTrip";
+    static final String ENCODE                      = "encode";
+    static final String DECODE                      = "decode";
+
+    static final String PAYLOAD_READ                = "payload.read";
+    static final String PAYLOAD_WRITTEN             = "payload.written";
+
+    static final String MISSES                      = "misses";
+    static final String EVICTIONS                   = "evictions";
+    static final String ERRORS                      = "errors";
+    static final String CONFLICTS                   = "conflicts";
+    static final String RETIRED_KEY_READS           = "retired.key.reads";
+
+    static final String CIRCUIT_OPENED              = "circuit.opened";
+    static final String CIRCUIT_REJECTED            = "circuit.rejected";
+    static final String SHED                        = "shed";
+
+    private static final String ERROR_SEPARATOR     = ".";
+
+    private static final String OBJECT_NAME         = "uk.co.blackcell.web.session:type=SessionMetrics";
+
+    private static final SessionMetrics INSTANCE = new SessionMetrics();
+
+    private final ConcurrentMap<String, SessionLatencyHistogram> timings = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, SessionLatencyHistogram> sizes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    private final List<SessionMetricsListener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile Supplier<Collection<? extends Pool<?>>> pools = Collections::emptyList;
+
+    private SessionMetrics() {
+        logger.debug("SessionMetrics constructor.");
+
+        if(SessionConfig.getInstance().isMetricsJmxEnabled()) {
+            register();
+        }
+    }
+
+    static SessionMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    private void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+
+        } catch(JMException ex) {
+            // Typically, a second class loader (such as a reloaded application) got there first.
+            logger.warn("Session metrics could not be registered with JMX: " + ex.toString());
+        }
+    }
+
+    void monitor(final Supplier<Collection<? extends Pool<?>>> pools) {
+        this.pools = pools;
+    }
+
+    void unmonitor(final Supplier<Collection<? extends Pool<?>>> pools) {
+        if(this.pools == pools) {
+            this.pools = Collections::emptyList;
+        }
+    }
+
+    void addListener(final SessionMetricsListener listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(final SessionMetricsListener listener) {
+        listeners.remove(listener);
+    }
+
+    void time(final String metric, final long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+
+        timings.computeIfAbsent(metric, name -> new SessionLatencyHistogram()).record(elapsed);
+        for(SessionMetricsListener listener : listeners) {
+            try {
+                listener.onTiming(metric, elapsed);
+            } catch(RuntimeException ex) {
+                logger.warn("Session metrics listener failed: " + ex.toString());
+            }
+        }
+    }
+
+    void size(final String metric, final long bytes) {
+        sizes.computeIfAbsent(metric, name -> new SessionLatencyHistogram()).record(bytes);
+        for(SessionMetricsListener listener : listeners) {
+            try {
+                listener.onSize(metric, bytes);
+            } catch(RuntimeException ex) {
+                logger.warn("Session metrics listener failed: " + ex.toString());
+            }
+        }
+    }
+
+    void count(final String metric, final long count) {
+        counters.computeIfAbsent(metric, name -> new LongAdder()).add(count);
+        for(SessionMetricsListener listener : listeners) {
+            try {
+                listener.onCount(metric, count);
+            } catch(RuntimeException ex) {
+                logger.warn("Session metrics listener failed: " + ex.toString());
+            }
+        }
+    }
+
+    void miss(final long count) {
+        count(MISSES, count);
+    }
+
+    void error(final String operation) {
+        count(ERRORS, 1);
+        count(ERRORS + ERROR_SEPARATOR + operation, 1);
+    }
+
+    public Map<String, Long> getOperationCounts() {
+        return collect(timings, SessionLatencyHistogram::getCount);
+    }
+
+    public Map<String, Double> getMeanLatencyMicros() {
+        return collect(timings, histogram -> histogram.getMean() / TimeUnit.MICROSECONDS.toNanos(1));
+    }
+
+    public Map<String, Long> getP99LatencyMicros() {
+        return collect(timings, histogram -> TimeUnit.NANOSECONDS.toMicros(histogram.getPercentile(99)));
+    }
+
+    public Map<String, Long> getMaxLatencyMicros() {
+        return collect(timings, histogram -> TimeUnit.NANOSECONDS.toMicros(histogram.getMaximum()));
+    }
+
+    public Map<String, Double> getMeanPayloadBytes() {
+        return collect(sizes, SessionLatencyHistogram::getMean);
+    }
+
+    public Map<String, Long> getMaxPayloadBytes() {
+        return collect(sizes, SessionLatencyHistogram::getMaximum);
+    }
+
+    public Map<String, Long> getCounters() {
+        return collect(counters, LongAdder::sum);
+    }
+
+    // A clustered store has a pool per node, which are summed.
+    public int getPoolActive() {
+        return pools.get().stream().mapToInt(Pool::getNumActive).sum();
+    }
+
+    public int getPoolIdle() {
+        return pools.get().stream().mapToInt(Pool::getNumIdle).sum();
+    }
+
+    public int getPoolWaiters() {
+        return pools.get().stream().mapToInt(Pool::getNumWaiters).sum();
+    }
+
+    public double getCacheHitRatio() {
+        return SessionNearCache.getCacheHitRatio();
+    }
+
+    public long getWritesAvoided() {
+        return SessionFingerprints.getWritesAvoided();
+    }
+
+    public String getCircuitState() {
+        return SessionCircuitBreaker.getCurrentState();
+    }
+
+    private static <T, R> Map<String, R> collect(final Map<String, T> metrics, final Function<T, R> reading) {
+        Map<String, R> readings = new TreeMap<>();
+        metrics.forEach((metric, value) -> readings.put(metric, reading.apply(value)));
+        return readings;
+    }
+}
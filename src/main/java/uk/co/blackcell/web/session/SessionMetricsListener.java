@@ -0,0 +1,18 @@
+/**
+ * This is the session metrics listener, through which an application can forward the session
+ * layer's metrics to its own registry (for example Dropwizard or Micrometer). Listeners are
+ * called on the thread performing the session operation, so should return quickly.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+public interface SessionMetricsListener
+{
+    void onTiming(final String metric, final long nanos);
+
+    void onSize(final String metric, final long bytes);
+
+    void onCount(final String metric, final long count);
+}
@@ -0,0 +1,39 @@
+/**
+ * This is the JMX management interface of the session metrics. Latencies are reported in
+ * microseconds, and keyed by the operation (or operation stage) measured.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import java.util.Map;
+
+public interface SessionMetricsMXBean
+{
+    Map<String, Long> getOperationCounts();
+
+    Map<String, Double> getMeanLatencyMicros();
+
+    Map<String, Long> getP99LatencyMicros();
+
+    Map<String, Long> getMaxLatencyMicros();
+
+    Map<String, Double> getMeanPayloadBytes();
+
+    Map<String, Long> getMaxPayloadBytes();
+
+    Map<String, Long> getCounters();
+
+    int getPoolActive();
+
+    int getPoolIdle();
+
+    int getPoolWaiters();
+
+    double getCacheHitRatio();
+
+    long getWritesAvoided();
+
+    String getCircuitState();
+}
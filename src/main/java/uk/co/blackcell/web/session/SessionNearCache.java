@@ -0,0 +1,294 @@
+/**
+ * This is the session near-cache, a bounded in-process (L1) cache of decoded session data.
+ * Entries are evicted on a least-recently-used basis, and expire after a configured interval.
+ * Coherence across nodes is maintained by subscribing to the session invalidation channel, on
+ * which every node publishes the identifiers (never the data) of the sessions it changes. A
+ * batch of changes is announced as one message, listing every identifier in the batch. The
+ * same invalidations evict the fingerprints kept for dirty checking (see SessionFingerprints),
+ * so a session changed by another node is never taken to be unchanged by this one.
+ *
+ * Every invalidation advances the generation of the session's stripe. A session read or written
+ * is only cached if its generation is unchanged since the read or write began, so a change
+ * announced meanwhile is never overwritten with the value it replaced.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.JedisPubSub;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+final class SessionNearCache
+{
+    private static final Logger logger = LoggerFactory.getLogger(SessionNearCache.class);
+
+    private static final String MESSAGE_SEPARATOR           = "|";
+    private static final String ID_SEPARATOR                = "\n";
+
+    private static final long RESUBSCRIBE_DELAY_MILLIS      = 1000;
+    private static final int GENERATION_STRIPES             = 1024;
+
+    // Identifies changes made by this node, which have already been applied to its cache.
+    private static final String ORIGIN = UUID.randomUUID().toString();
+
+    private static volatile SessionNearCache instance;
+
+    // Both may be changed when the configuration is reloaded.
+    private volatile int maximumSize;
+    private volatile long timeToLiveNanos;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private final Map<String, CachedSession> entries;
+
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    // Entries are only served while we are subscribed, otherwise invalidations may be missed.
+    private volatile boolean subscribed;
+
+    private volatile boolean closed;
+
+    private JedisPubSub listener;
+    private Thread subscriber;
+
+    // Held, so that it can be unregistered when the cache is shut down.
+    private Runnable reloadListener;
+
+    private SessionNearCache(final int maximumSize, final long timeToLiveMillis) {
+        logger.debug("SessionNearCache({}, {}) constructor.", maximumSize, timeToLiveMillis);
+
+        this.maximumSize = maximumSize;
+        this.timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis);
+
+        this.entries = new LinkedHashMap<String, CachedSession>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedSession> eldest) {
+                return size() > SessionNearCache.this.maximumSize;
+            }
+        };
+    }
+
+    static synchronized SessionNearCache getInstance(final SessionStore store) {
+        if(instance == null) {
+            SessionConfig config = SessionConfig.getInstance();
+
+            instance = new SessionNearCache(config.getCacheSize(), config.getCacheTimeToLiveInMillis());
+            instance.listen(store, config.getCacheChannel());
+
+            SessionNearCache cache = instance;
+            cache.reloadListener = () -> cache.reconfigure(config.getCacheSize(), config.getCacheTimeToLiveInMillis());
+            config.addListener(cache.reloadListener);
+        }
+        return instance;
+    }
+
+    void reconfigure(final int maximumSize, final long timeToLiveMillis) {
+        logger.debug("reconfigure({}, {})...", maximumSize, timeToLiveMillis);
+
+        this.maximumSize = maximumSize;
+        this.timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis);
+
+        // A smaller cache is trimmed now, rather than one entry per put.
+        synchronized (entries) {
+            Iterator<String> eldest = entries.keySet().iterator();
+            while(entries.size() > maximumSize && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    static synchronized void shutdown() {
+        if(instance != null) {
+            logger.debug("Shutting down session near-cache...");
+
+            SessionConfig.getInstance().removeListener(instance.reloadListener);
+            instance.close();
+            instance = null;
+        }
+    }
+
+    static double getCacheHitRatio() {
+        SessionNearCache cache = instance;
+        return (cache == null) ? 0.0 : cache.getHitRatio();
+    }
+
+    boolean isSubscribed() {
+        return subscribed;
+    }
+
+    Optional<byte[]> get(final String sessionID) {
+        Optional<byte[]> data = Optional.empty();
+
+        if(subscribed) {
+            synchronized (entries) {
+                CachedSession entry = entries.get(sessionID);
+                if (entry != null) {
+                    if (entry.expiresAt - System.nanoTime() > 0) {
+                        data = Optional.of(entry.data.clone());
+                    } else {
+                        entries.remove(sessionID);
+                    }
+                }
+            }
+        }
+
+        if(data.isPresent()) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return data;
+    }
+
+    long generation(final String sessionID) {
+        return generations.get(stripe(sessionID));
+    }
+
+    // The generation is that taken before the session was read, or returned when it was invalidated.
+    void put(final String sessionID, final byte[] data, final long generation) {
+        if(subscribed) {
+            CachedSession entry = new CachedSession(data.clone(), System.nanoTime() + timeToLiveNanos);
+            synchronized (entries) {
+                if(generations.get(stripe(sessionID)) == generation) {
+                    entries.put(sessionID, entry);
+                }
+            }
+        }
+    }
+
+    long invalidate(final String sessionID) {
+        synchronized (entries) {
+            entries.remove(sessionID);
+            return generations.incrementAndGet(stripe(sessionID));
+        }
+    }
+
+    private void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+            for(int stripe = 0; stripe < GENERATION_STRIPES; stripe++) {
+                generations.incrementAndGet(stripe);
+            }
+        }
+    }
+
+    private static int stripe(final String sessionID) {
+        return sessionID.hashCode() & (GENERATION_STRIPES - 1);
+    }
+
+    void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    double getHitRatio() {
+        long found = hits.sum();
+        long total = found + misses.sum();
+
+        return (total == 0) ? 0.0 : (double)found / total;
+    }
+
+    static String toMessage(final String sessionID) {
+        return ORIGIN + MESSAGE_SEPARATOR + sessionID;
+    }
+
+    static String toMessage(final Collection<String> sessionIDs) {
+        return ORIGIN + MESSAGE_SEPARATOR + String.join(ID_SEPARATOR, sessionIDs);
+    }
+
+    private void close() {
+        closed = true;
+        subscribed = false;
+
+        // Unsubscribing releases the connection held by the subscription.
+        if(listener.isSubscribed()) {
+            try {
+                listener.unsubscribe();
+
+            } catch(RuntimeException ex) {
+                logger.debug("Session invalidation channel could not be unsubscribed: {}", ex.toString());
+            }
+        }
+        subscriber.interrupt();
+
+        clear();
+    }
+
+    private void listen(final SessionStore store, final String channel) {
+        logger.debug("Listening for session invalidations on channel [{}]...", channel);
+
+        listener = new JedisPubSub() {
+            @Override
+            public void onSubscribe(String channel, int subscribedChannels) {
+                logger.debug("Subscribed to session invalidation channel [{}].", channel);
+                subscribed = true;
+            }
+
+            @Override
+            public void onMessage(String channel, String message) {
+                int separator = message.indexOf(MESSAGE_SEPARATOR);
+
+                // Our own changes have already been applied to the cache.
+                boolean local = (separator == ORIGIN.length() && message.startsWith(ORIGIN));
+
+                if(separator > 0 && !local) {
+                    for(String sessionID : message.substring(separator + 1).split(ID_SEPARATOR)) {
+                        invalidate(sessionID);
+                        SessionFingerprints.evict(sessionID);
+                    }
+                }
+            }
+        };
+
+        subscriber = new Thread(() -> {
+            while(!closed && !Thread.currentThread().isInterrupted()) {
+                try {
+                    store.subscribe(listener, channel);
+
+                } catch(Exception ex) {
+                    logger.warn("Session invalidation subscription was lost: " + ex.toString());
+                }
+
+                // Invalidations may have been missed whilst disconnected.
+                subscribed = false;
+                invalidateAll();
+                SessionFingerprints.evictAll();
+
+                try {
+                    Thread.sleep(RESUBSCRIBE_DELAY_MILLIS);
+                } catch(InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "session-near-cache-invalidation");
+
+        subscriber.setDaemon(true);
+        subscriber.start();
+    }
+
+    private static final class CachedSession
+    {
+        private final byte[] data;
+        private final long expiresAt;
+
+        private CachedSession(final byte[] data, final long expiresAt) {
+            this.data = data;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * This is the session store interface, which abstracts the physical storage of (encoded)
+ * session data from the facades that encode and decode it. Every write applies the session
+ * timeout atomically, and every change is announced to nodes holding a near-cache.
+ *
+ * A session may also hold individually addressable attributes, kept alongside the session
+ * data under a companion key. The session timeout applies to, and is refreshed for, both.
+ *
+ * A conditional write replaces the session data only if the version held by the stored value
+ * is the one expected, comparing and writing atomically within the store.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import redis.clients.jedis.JedisPubSub;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+interface SessionStore
+{
+    String ping();
+
+    void warmUp(final int connections);
+
+    Optional<byte[]> readAndTouch(final byte[] key, final boolean touch);
+
+    String writeWithTimeout(final byte[] key, final byte[] data);
+
+    String writeIfVersion(final byte[] key, final byte[] version, final byte[] data);
+
+    List<byte[]> readAllAndTouch(final byte[][] keys, final boolean[] touch);
+
+    List<String> writeAllWithTimeout(final byte[][] keys, final byte[][] data);
+
+    long delete(final Collection<String> sessionIDs);
+
+    long expire(final String sessionID);
+
+    List<Long> expireAll(final List<String> sessionIDs);
+
+    List<byte[]> readFields(final byte[] key, final byte[][] fields, final boolean touch);
+
+    String writeFields(final byte[] key, final Map<byte[], byte[]> fields);
+
+    long deleteFields(final byte[] key, final byte[][] fields);
+
+    void subscribe(final JedisPubSub listener, final String channel);
+}
@@ -0,0 +1,146 @@
+/**
+ * This is the session timeout refresher, which throttles sliding expiration. It remembers when
+ * this node last extended each session's timeout, so a timeout is only extended again once the
+ * configured threshold has elapsed. The threshold is read on every check, so a reloaded
+ * configuration (which keeps it below the session timeout) takes effect at once. Refreshes which are not tied to a Redis request (such as
+ * near-cache hits) are queued, and flushed periodically as a single pipelined batch.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+final class SessionTimeoutRefresher
+{
+    private static final Logger logger = LoggerFactory.getLogger(SessionTimeoutRefresher.class);
+
+    private static final String THREAD_NAME                 = "session-timeout-refresher";
+
+    private static volatile SessionTimeoutRefresher instance;
+
+    private final Map<String, Long> refreshed;
+
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    private ScheduledExecutorService scheduler;
+
+    private ISessionFacade facade;
+
+    private final SessionConfig config = SessionConfig.getInstance();
+
+    private SessionTimeoutRefresher(final int maximumSize) {
+        logger.debug("SessionTimeoutRefresher({}) constructor.", maximumSize);
+
+        this.refreshed = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    static synchronized SessionTimeoutRefresher getInstance(final ISessionFacade facade) {
+        if(instance == null) {
+            SessionConfig config = SessionConfig.getInstance();
+
+            instance = new SessionTimeoutRefresher(config.getTimeoutRefreshTrackingSize());
+            instance.schedule(facade, config.getTimeoutRefreshBatchInMillis());
+        }
+        return instance;
+    }
+
+    // Refreshes still queued are flushed, so no session expires early because of a restart.
+    static synchronized void shutdown() {
+        if(instance != null) {
+            logger.debug("Shutting down session timeout refresher...");
+
+            instance.scheduler.shutdownNow();
+            instance.flush(instance.facade);
+
+            instance = null;
+        }
+    }
+
+    boolean isDue(final String sessionID) {
+        long thresholdNanos = thresholdNanos();
+        if(thresholdNanos <= 0) {
+            return true;
+        }
+
+        Long last;
+        synchronized (refreshed) {
+            last = refreshed.get(sessionID);
+        }
+        return last == null || System.nanoTime() - last >= thresholdNanos;
+    }
+
+    void refreshed(final String sessionID) {
+        if(thresholdNanos() > 0) {
+            long now = System.nanoTime();
+            synchronized (refreshed) {
+                refreshed.put(sessionID, now);
+            }
+        }
+    }
+
+    private long thresholdNanos() {
+        return TimeUnit.SECONDS.toNanos(config.getTimeoutRefreshThresholdInSeconds());
+    }
+
+    void forget(final String sessionID) {
+        synchronized (refreshed) {
+            refreshed.remove(sessionID);
+        }
+        pending.remove(sessionID);
+    }
+
+    void refreshLater(final String sessionID) {
+        if(isDue(sessionID)) {
+            refreshed(sessionID);
+            pending.add(sessionID);
+        }
+    }
+
+    private void schedule(final ISessionFacade facade, final long intervalMillis) {
+        this.facade = facade;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        scheduler.scheduleWithFixedDelay(() -> flush(facade), intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush(final ISessionFacade facade) {
+        if(pending.isEmpty()) {
+            return;
+        }
+
+        List<String> batch = new ArrayList<>(pending);
+        pending.removeAll(batch);
+
+        logger.debug("Refreshing timeout of {} session(s)...", batch.size());
+        try {
+            facade.touchAll(batch);
+
+        } catch(Exception ex) {
+            logger.warn("Session timeouts could not be refreshed: " + ex.toString());
+            batch.forEach(this::forget);
+        }
+    }
+}
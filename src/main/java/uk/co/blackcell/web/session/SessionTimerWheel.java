@@ -0,0 +1,119 @@
+/**
+ * This is the session timer wheel, which expires sessions held in-process without a timer per
+ * session. Sessions are hashed into the bucket of the tick in which they are due, and a single
+ * thread sweeps each bucket as its tick passes. A session whose timeout was extended since it
+ * was scheduled is simply rescheduled when its original bucket is swept.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+final class SessionTimerWheel
+{
+    private static final Logger logger = LoggerFactory.getLogger(SessionTimerWheel.class);
+
+    private static final String THREAD_NAME                 = "session-expiry";
+
+    // Returned by the expiry callback when the session no longer needs scheduling.
+    static final long EXPIRED                               = -1;
+
+    private final long origin = System.nanoTime();
+
+    private final long tickNanos;
+    private final int mask;
+
+    private final Set<String>[] buckets;
+
+    private long swept;
+
+    private ScheduledExecutorService scheduler;
+
+    @SuppressWarnings("unchecked")
+    SessionTimerWheel(final long tickMillis, final int size) {
+        logger.debug("SessionTimerWheel({}, {}) constructor.", tickMillis, size);
+
+        // The wheel size is rounded up to a power of two, so a bucket is found by masking.
+        int buckets = Integer.highestOneBit(Math.max(size, 2) - 1) << 1;
+
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.mask = buckets - 1;
+
+        this.buckets = new Set[buckets];
+        for(int index = 0; index < buckets; index++) {
+            this.buckets[index] = ConcurrentHashMap.newKeySet();
+        }
+    }
+
+    void start(final ToLongFunction<String> expiry) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long tickMillis = TimeUnit.NANOSECONDS.toMillis(tickNanos);
+        scheduler.scheduleAtFixedRate(() -> sweep(expiry), tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        if(scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    void schedule(final String sessionID, final long deadlineNanos) {
+        // A session is never scheduled into a tick which may already have been swept.
+        long tick = Math.max(tickOf(deadlineNanos), tickOf(System.nanoTime()) + 1);
+
+        buckets[(int)(tick & mask)].add(sessionID);
+    }
+
+    void sweep(final ToLongFunction<String> expiry) {
+        long now = System.nanoTime();
+        long current = tickOf(now);
+
+        int expired = 0;
+        for(long tick = swept + 1; tick <= current; tick++) {
+            Set<String> bucket = buckets[(int)(tick & mask)];
+
+            List<String> due = new ArrayList<>(bucket);
+            bucket.removeAll(due);
+
+            for(String sessionID : due) {
+                long deadline = expiry.applyAsLong(sessionID);
+                if(deadline == EXPIRED) {
+                    expired++;
+                } else {
+                    schedule(sessionID, deadline);
+                }
+            }
+
+            // A sweep never needs to go round the wheel more than once.
+            if(tick - swept > mask) {
+                break;
+            }
+        }
+        swept = current;
+
+        if(expired > 0) {
+            logger.debug("{} session(s) expired...", expired);
+        }
+    }
+
+    private long tickOf(final long nanos) {
+        return (nanos - origin) / tickNanos;
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * This is the typed session manager, which stores the application's own session objects,
+ * turned into bytes (and back) by a session codec. The encoded bytes go straight to
+ * compression, encryption and the store, so no intermediate string (such as JSON text) is
+ * built, and every application no longer has to convert its sessions itself.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.blackcell.web.session.exceptions.SessionNotFoundException;
+import uk.co.blackcell.web.session.exceptions.SessionNotPersistedException;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+
+public class TypedSessionManager<T>
+{
+    private static final Logger logger = LoggerFactory.getLogger(TypedSessionManager.class);
+
+    private final SessionCodec<T> codec;
+
+    private ISessionFacade session;
+
+    private AsyncSessionFacade asyncSession;
+
+    public TypedSessionManager(final SessionCodec<T> codec) {
+        logger.debug("TypedSessionManager({}) constructor.", codec.getClass().getName());
+
+        this.codec = codec;
+
+        initialise(Optional.empty());
+    }
+
+    public TypedSessionManager(final SessionCodec<T> codec, final String keyPath) {
+        logger.debug("TypedSessionManager({}, {}) constructor.", codec.getClass().getName(), keyPath);
+
+        this.codec = codec;
+
+        initialise(Optional.of(keyPath));
+    }
+
+    private void initialise(Optional<String> keyPath) {
+        session = SessionFactory.getFactory().getSession(keyPath);
+        asyncSession = new AsyncSessionFacade(session);
+    }
+
+    public void save(final String sessionID, final T data) throws SessionNotPersistedException {
+        session.setBytes(sessionID, codec.encode(data));
+    }
+
+    public T find(final String sessionID) throws SessionNotFoundException {
+        return codec.decode(session.getBytes(sessionID));
+    }
+
+    public void invalidate(final String sessionID) {
+        session.invalidate(sessionID);
+    }
+
+    public Map<String, T> findAll(final Collection<String> sessionIDs) {
+        Map<String, T> sessions = new LinkedHashMap<>();
+        session.getAllBytes(sessionIDs).forEach((sessionID, data) -> sessions.put(sessionID, codec.decode(data)));
+        return sessions;
+    }
+
+    public void saveAll(final Map<String, T> sessions) throws SessionNotPersistedException {
+        Map<String, byte[]> data = new LinkedHashMap<>();
+        sessions.forEach((sessionID, value) -> data.put(sessionID, codec.encode(value)));
+        session.setAllBytes(data);
+    }
+
+    // The session is encoded before returning, so later changes to it are not saved.
+    public CompletionStage<Void> saveAsync(final String sessionID, final T data) {
+        return asyncSession.setBytes(sessionID, codec.encode(data));
+    }
+
+    public CompletionStage<T> findAsync(final String sessionID) {
+        return asyncSession.getBytes(sessionID).thenApply(codec::decode);
+    }
+
+    public CompletionStage<Void> invalidateAsync(final String sessionID) {
+        return asyncSession.invalidate(sessionID);
+    }
+}
@@ -0,0 +1,17 @@
+/**
+ * This is the UUID session identifier generator, which issues identifiers in the 36-character
+ * form used before compact identifiers were introduced, for deployments which depend upon it.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import java.util.UUID;
+
+final class UuidSessionIdGenerator implements SessionIdGenerator
+{
+    public String generate() {
+        return UUID.randomUUID().toString();
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * This is a versioned session, the data of a session along with the version it was read at.
+ * Saving it back with that version only succeeds if no one else has saved the session since,
+ * otherwise a conflict is raised and the session may be read again and the change retried.
+ *
+ * @author James Bishop
+ * @version 1.0
+ */
+package uk.co.blackcell.web.session;
+
+import java.nio.charset.StandardCharsets;
+
+public final class VersionedSession
+{
+    private final byte[] bytes;
+
+    private final long version;
+
+    VersionedSession(final byte[] bytes, final long version) {
+        this.bytes = bytes;
+        this.version = version;
+    }
+
+    public String getData() {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
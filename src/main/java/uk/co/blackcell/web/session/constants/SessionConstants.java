@@ -11,8 +11,13 @@ public final class SessionConstants
     public static final String SESSION_NOT_FOUND_ERROR          = "Session could not be found in persistent store.";
     public static final String SESSION_AUTHENTICATION_ERROR     = "Failed to authenticate using supplied credentials.";
     public static final String SESSION_BAD_CONFIGURATION        = "Session management was badly configured.";
+    public static final String SESSION_STORE_CLOSED             = "Session store has been shut down.";
+    public static final String SESSION_BUDGET_EXHAUSTED         = "Session operation did not complete within its time budget.";
+    public static final String SESSION_CIRCUIT_OPEN             = "Session store is unavailable, the circuit is open.";
+    public static final String SESSION_VERSION_CONFLICT         = "Session was changed since it was read, so was not saved.";
 
     public static final String SESSION_RESPONSE_CODE            = "OK";
+    public static final String SESSION_CONFLICT_CODE            = "CONFLICT";
 
     public static final String FORWARD_SLASH                    = "/";
 }
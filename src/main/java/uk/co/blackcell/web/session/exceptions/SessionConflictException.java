@@ -0,0 +1,8 @@
+package uk.co.blackcell.web.session.exceptions;
+
+public final class SessionConflictException extends SessionNotPersistedException
+{
+    public SessionConflictException(final String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,98 @@
+package uk.co.blackcell.web.session;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit test for the Map Session Codec component.
+ */
+public class MapSessionCodecTest extends TestCase
+{
+    /**
+     * Create the test case
+     * @param testName name of the test case
+     */
+    public MapSessionCodecTest(String testName ) {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite( MapSessionCodecTest.class );
+    }
+
+    /**
+     * Unit test to ensure that what we encode, is what we decode, for every supported type of
+     * value, nested values and extremes of number included.
+     */
+    public void testEncodedSessionIsDecoded() {
+        Map<String, Object> basket = new LinkedHashMap<>();
+        basket.put("items", Arrays.asList("book", 2, null, Long.MIN_VALUE));
+        basket.put("total", 19.99d);
+
+        Map<String, Object> session = new LinkedHashMap<>();
+        session.put("user", "james");
+        session.put("signedIn", true);
+        session.put("expired", false);
+        session.put("visits", -1);
+        session.put("largest", Integer.MAX_VALUE);
+        session.put("since", 1500000000000L);
+        session.put("token", new byte[] { 0x00, (byte)0xFF, 0x7F });
+        session.put("greeting", "Hello, \u4e16\u754c");
+        session.put("nothing", null);
+        session.put("basket", basket);
+
+        MapSessionCodec codec = new MapSessionCodec();
+        Map<String, Object> decoded = codec.decode(codec.encode(session));
+
+        assertEquals(session.keySet().toString(), decoded.keySet().toString());
+        assertEquals("james", decoded.get("user"));
+        assertEquals(Boolean.TRUE, decoded.get("signedIn"));
+        assertEquals(Boolean.FALSE, decoded.get("expired"));
+        assertEquals(-1, decoded.get("visits"));
+        assertEquals(Integer.MAX_VALUE, decoded.get("largest"));
+        assertEquals(1500000000000L, decoded.get("since"));
+        assertTrue(Arrays.equals((byte[])session.get("token"), (byte[])decoded.get("token")));
+        assertEquals("Hello, \u4e16\u754c", decoded.get("greeting"));
+        assertTrue(decoded.containsKey("nothing"));
+        assertNull(decoded.get("nothing"));
+
+        Map<?, ?> decodedBasket = (Map<?, ?>)decoded.get("basket");
+        assertEquals(19.99d, decodedBasket.get("total"));
+        assertEquals(Arrays.asList("book", 2, null, Long.MIN_VALUE), (List<?>)decodedBasket.get("items"));
+    }
+
+    /**
+     * Unit test to ensure that truncated or unrecognised data is rejected, rather than being
+     * decoded into a partial session.
+     */
+    public void testCorruptDataIsRejected() {
+        Map<String, Object> session = new LinkedHashMap<>();
+        session.put("user", "james");
+
+        MapSessionCodec codec = new MapSessionCodec();
+        byte[] encoded = codec.encode(session);
+
+        try {
+            codec.decode(Arrays.copyOf(encoded, encoded.length - 1));
+            fail("Truncated session data was decoded");
+        } catch(IllegalArgumentException ex) {
+            // Expected.
+        }
+
+        try {
+            codec.decode("{\"user\":\"james\"}".getBytes());
+            fail("Session data in an unknown format was decoded");
+        } catch(IllegalArgumentException ex) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package uk.co.blackcell.web.session;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+/**
+ * Unit test for the Off-Heap Buffers component.
+ */
+public class OffHeapBuffersTest extends TestCase
+{
+    /**
+     * Create the test case
+     * @param testName name of the test case
+     */
+    public OffHeapBuffersTest(String testName ) {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite( OffHeapBuffersTest.class );
+    }
+
+    /**
+     * Unit test to ensure that released buffers are reused by allocations of the same size
+     * class, without reserving any more memory.
+     */
+    public void testReleasedBuffersAreReused() {
+        OffHeapBuffers buffers = new OffHeapBuffers(4096);
+
+        ByteBuffer first = buffers.allocate(100).get();
+        assertTrue(first.isDirect());
+        assertEquals(100, first.limit());
+        assertEquals(128, buffers.getReserved());
+
+        buffers.release(first);
+
+        ByteBuffer second = buffers.allocate(120).get();
+        assertSame(first, second);
+        assertEquals(120, second.limit());
+        assertEquals(128, buffers.getReserved());
+    }
+
+    /**
+     * Unit test to ensure that the capacity is never exceeded, and that pooled buffers are
+     * dropped to make room for a different size class.
+     */
+    public void testCapacityIsEnforced() {
+        OffHeapBuffers buffers = new OffHeapBuffers(1024);
+
+        ByteBuffer large = buffers.allocate(1000).get();
+        assertFalse(buffers.allocate(64).isPresent());
+
+        buffers.release(large);
+
+        Optional<ByteBuffer> small = buffers.allocate(64);
+        assertTrue(small.isPresent());
+        assertEquals(64, buffers.getReserved());
+    }
+}
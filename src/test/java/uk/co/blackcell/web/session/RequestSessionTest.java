@@ -0,0 +1,228 @@
+package uk.co.blackcell.web.session;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import play.mvc.Http;
+import uk.co.blackcell.web.session.exceptions.SessionNotFoundException;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit test for the Request Session component, against a stub session facade, so that no
+ * running Play application is needed.
+ */
+public class RequestSessionTest extends TestCase
+{
+    private static final String SESSION_ID = "VGhpcyBpcyBhIHNlc3Npb24";
+
+    private StubSessionFacade stub;
+    private StubResponse response;
+
+    /**
+     * Create the test case
+     * @param testName name of the test case
+     */
+    public RequestSessionTest(String testName ) {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite( RequestSessionTest.class );
+    }
+
+    @Override
+    protected void setUp() {
+        stub = new StubSessionFacade();
+        stub.sessions.put(SESSION_ID, "{\"user\":\"james\"}");
+
+        response = new StubResponse();
+    }
+
+    /**
+     * Data set before it is read is never loaded, and is written back, as it is not known
+     * to be unchanged.
+     */
+    public void testSetDataBeforeGetDataIsNotLoaded() throws Exception {
+        RequestSession session = new RequestSession(stub, Optional.of(SESSION_ID));
+
+        session.setData("{\"user\":\"james\"}");
+        assertEquals(Optional.of("{\"user\":\"james\"}"), session.getData());
+
+        writeBack(session);
+
+        assertEquals(0, stub.reads.get());
+        assertEquals(1, stub.writes.get());
+        assertEquals("{\"user\":\"james\"}", stub.sessions.get(SESSION_ID));
+        assertEquals(0, response.cookies.get());
+    }
+
+    /**
+     * A session invalidated and then saved is removed, and its data written under a new
+     * identifier, which is set as the cookie.
+     */
+    public void testInvalidateThenSaveStartsNewSession() throws Exception {
+        RequestSession session = new RequestSession(stub, Optional.of(SESSION_ID));
+
+        assertEquals(Optional.of("{\"user\":\"james\"}"), session.getData());
+
+        session.invalidate();
+        assertEquals(Optional.empty(), session.getData());
+
+        session.setData("{\"user\":\"guest\"}");
+        writeBack(session);
+
+        String sessionID = session.getId().get();
+        assertFalse(SESSION_ID.equals(sessionID));
+
+        assertEquals(1, stub.reads.get());
+        assertEquals(1, stub.invalidations.get());
+        assertFalse(stub.sessions.containsKey(SESSION_ID));
+        assertEquals("{\"user\":\"guest\"}", stub.sessions.get(sessionID));
+        assertEquals(1, response.cookies.get());
+        assertEquals(0, response.discarded.get());
+    }
+
+    /**
+     * A session invalidated and not saved again is removed, and its cookie discarded.
+     */
+    public void testInvalidateDiscardsCookie() throws Exception {
+        RequestSession session = new RequestSession(stub, Optional.of(SESSION_ID));
+
+        session.invalidate();
+        writeBack(session);
+
+        assertEquals(0, stub.reads.get());
+        assertEquals(0, stub.writes.get());
+        assertFalse(stub.sessions.containsKey(SESSION_ID));
+        assertEquals(1, response.discarded.get());
+    }
+
+    /**
+     * Data which is read and saved unchanged is not written back, however often it is saved.
+     */
+    public void testUnchangedDataIsNotWritten() throws Exception {
+        RequestSession session = new RequestSession(stub, Optional.of(SESSION_ID));
+
+        String data = session.getData().get();
+        session.setData(data);
+        session.getData();
+        session.setData(data);
+
+        writeBack(session);
+
+        assertEquals(1, stub.reads.get());
+        assertEquals(0, stub.writes.get());
+        assertEquals(0, stub.invalidations.get());
+        assertEquals(0, response.cookies.get());
+    }
+
+    private void writeBack(final RequestSession session) throws Exception {
+        session.writeBack(new AsyncSessionFacade(stub), response).toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+
+    // Only the operations a request session uses are supported.
+    private static final class StubSessionFacade implements ISessionFacade
+    {
+        private final Map<String, String> sessions = new ConcurrentHashMap<>();
+
+        private final AtomicInteger reads = new AtomicInteger();
+        private final AtomicInteger writes = new AtomicInteger();
+        private final AtomicInteger invalidations = new AtomicInteger();
+
+        public void ping(final String sessionID) {
+        }
+
+        public String getData(final String sessionID) throws SessionNotFoundException {
+            reads.incrementAndGet();
+
+            String data = sessions.get(sessionID);
+            if(data == null) {
+                throw new SessionNotFoundException("Session not found: " + sessionID);
+            }
+            return data;
+        }
+
+        public void setData(final String sessionID, final String data) {
+            writes.incrementAndGet();
+            sessions.put(sessionID, data);
+        }
+
+        public void invalidate(final String sessionID) {
+            invalidations.incrementAndGet();
+            sessions.remove(sessionID);
+        }
+
+        public byte[] getBytes(final String sessionID) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void setBytes(final String sessionID, final byte[] data) {
+            throw new UnsupportedOperationException();
+        }
+
+        public VersionedSession getVersionedBytes(final String sessionID) {
+            throw new UnsupportedOperationException();
+        }
+
+        public long setVersionedBytes(final String sessionID, final byte[] data, final long version) {
+            throw new UnsupportedOperationException();
+        }
+
+        public Map<String, byte[]> getAllBytes(final Collection<String> sessionIDs) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void setAllBytes(final Map<String, byte[]> sessions) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void invalidateAll(final Collection<String> sessionIDs) {
+            throw new UnsupportedOperationException();
+        }
+
+        public boolean touch(final String sessionID) {
+            throw new UnsupportedOperationException();
+        }
+
+        public Collection<String> touchAll(final Collection<String> sessionIDs) {
+            throw new UnsupportedOperationException();
+        }
+
+        public Map<String, byte[]> getAttributes(final String sessionID, final Collection<String> names) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void setAttributes(final String sessionID, final Map<String, byte[]> attributes) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void removeAttributes(final String sessionID, final Collection<String> names) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static final class StubResponse extends Http.Response
+    {
+        private final AtomicInteger cookies = new AtomicInteger();
+        private final AtomicInteger discarded = new AtomicInteger();
+
+        @Override
+        public void setCookie(final Http.Cookie cookie) {
+            cookies.incrementAndGet();
+        }
+
+        @Override
+        public void discardCookie(final String name) {
+            discarded.incrementAndGet();
+        }
+    }
+}
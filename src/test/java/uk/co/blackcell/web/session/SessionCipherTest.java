@@ -0,0 +1,133 @@
+package uk.co.blackcell.web.session;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import javax.crypto.spec.IvParameterSpec;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit test for the Session Cipher component.
+ */
+public class SessionCipherTest extends TestCase
+{
+    private static final byte[] KEY = "48576951235648967523156984256742".getBytes(StandardCharsets.UTF_8);
+
+    private static final IvParameterSpec VECTOR = new IvParameterSpec(new byte[] {
+            0x32, 0x43, 0x18, 0x0A, 0x07, 0x64, 0x75, 0x0B,
+            0x27, 0x65, 0x51, 0x72, 0x13, 0x0F, 0x39, 0x19
+    });
+
+    /**
+     * Create the test case
+     * @param testName name of the test case
+     */
+    public SessionCipherTest(String testName ) {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite( SessionCipherTest.class );
+    }
+
+    /**
+     * Unit test to ensure that what we encrypt, is what we decrypt, when the same
+     * cipher instance is reused for several operations.
+     */
+    public void testEncryptedDataIsDecrypted() throws Exception {
+        final byte[] myAppData = "This is my app data and I want to feel safe :-(".getBytes(StandardCharsets.UTF_8);
+
+        SessionCipher cipher = new SessionCipher(KEY);
+
+        for(int i = 0; i < 3; i++) {
+            byte[] encrypted = cipher.encrypt(myAppData, VECTOR);
+
+            assertFalse(Arrays.equals(myAppData, encrypted));
+            assertTrue(Arrays.equals(myAppData, cipher.decrypt(encrypted, VECTOR)));
+        }
+    }
+
+    /**
+     * Enveloped sessions are decrypted in place, from an offset within the stored value.
+     */
+    public void testEncryptedDataIsDecryptedFromOffset() throws Exception {
+        final byte[] myAppData = "This is my app data and I want to feel safe :-(".getBytes(StandardCharsets.UTF_8);
+
+        SessionCipher cipher = new SessionCipher(KEY);
+
+        byte[] stored = SessionEnvelope.wrap(SessionEnvelope.FLAG_ENCRYPTED, cipher.encrypt(myAppData, VECTOR));
+        byte[] decrypted = cipher.decrypt(stored, SessionEnvelope.HEADER_LENGTH, stored.length - SessionEnvelope.HEADER_LENGTH, VECTOR);
+
+        assertTrue(Arrays.equals(myAppData, decrypted));
+    }
+
+    /**
+     * The same data encrypted twice, each with its own random vector, gives different cipher text,
+     * and is decrypted by the keyring with the key it was encrypted with.
+     */
+    public void testKeyringDecryptsWithAnyActiveKey() throws Exception {
+        final byte[] myAppData = "This is my app data and I want to feel safe :-(".getBytes(StandardCharsets.UTF_8);
+
+        Map<Integer, String> keys = new HashMap<>();
+        keys.put(0, "48576951235648967523156984256742");
+        keys.put(7, "0123456789abcdef");
+
+        SessionKeyring retired = new SessionKeyring(keys, 0);
+        SessionKeyring current = new SessionKeyring(keys, 7);
+
+        IvParameterSpec first = SessionKeyring.nextVector();
+        IvParameterSpec second = SessionKeyring.nextVector();
+
+        byte[] encrypted = current.getCurrent().encrypt(myAppData, first);
+
+        assertFalse(Arrays.equals(encrypted, current.getCurrent().encrypt(myAppData, second)));
+        assertTrue(Arrays.equals(myAppData, retired.get(7).decrypt(encrypted, first)));
+        assertFalse(retired.isCurrent(7));
+
+        try {
+            new SessionKeyring(Collections.singletonMap(0, keys.get(0)), 0).get(7);
+            fail("A key which is not active should not be usable");
+        } catch(InvalidKeyException ex) {
+            // Expected.
+        }
+    }
+
+    /**
+     * Test to ensure a single cipher may be shared safely between threads.
+     */
+    public void testCipherIsThreadSafe() throws Exception {
+        final SessionCipher cipher = new SessionCipher(KEY);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] results = new Future<?>[16];
+            for(int i = 0; i < results.length; i++) {
+                final byte[] myAppData = ("Session data for thread task " + i).getBytes(StandardCharsets.UTF_8);
+                results[i] = executor.submit(() -> {
+                    for(int j = 0; j < 100; j++) {
+                        assertTrue(Arrays.equals(myAppData, cipher.decrypt(cipher.encrypt(myAppData, VECTOR), VECTOR)));
+                    }
+                    return null;
+                });
+            }
+            for(Future<?> result : results) {
+                result.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
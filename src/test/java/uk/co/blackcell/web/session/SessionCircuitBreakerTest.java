@@ -0,0 +1,114 @@
+package uk.co.blackcell.web.session;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit test for the Session Circuit Breaker component.
+ */
+public class SessionCircuitBreakerTest extends TestCase
+{
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Create the test case
+     * @param testName name of the test case
+     */
+    public SessionCircuitBreakerTest(String testName ) {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite( SessionCircuitBreakerTest.class );
+    }
+
+    /**
+     * Unit test to ensure that the circuit only opens once the minimum number of calls has been
+     * seen and the failure rate is reached, and then rejects calls.
+     */
+    public void testOpensOnFailureRate() {
+        SessionCircuitBreaker breaker = new SessionCircuitBreaker(10, 4, 50, 100, 1000, 60000, 2);
+
+        breaker.onFailure(FAST);
+        breaker.onFailure(FAST);
+        breaker.onSuccess(FAST);
+        assertEquals(SessionCircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.onSuccess(FAST);
+        assertEquals(SessionCircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    /**
+     * Unit test to ensure that slow calls open the circuit even when they succeed.
+     */
+    public void testOpensOnSlowRate() {
+        SessionCircuitBreaker breaker = new SessionCircuitBreaker(4, 4, 100, 50, 10, 60000, 2);
+
+        long slow = TimeUnit.MILLISECONDS.toNanos(20);
+
+        breaker.onSuccess(FAST);
+        breaker.onSuccess(slow);
+        breaker.onSuccess(FAST);
+        assertTrue(breaker.tryAcquire());
+
+        breaker.onSuccess(slow);
+        assertEquals(SessionCircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    /**
+     * Unit test to ensure that, once open, a limited number of trial calls are let through, and
+     * that the circuit closes once they all succeed, or re-opens if one fails.
+     */
+    public void testHalfOpenProbes() throws InterruptedException {
+        SessionCircuitBreaker breaker = new SessionCircuitBreaker(2, 2, 50, 100, 1000, 1, 2);
+
+        breaker.onFailure(FAST);
+        breaker.onFailure(FAST);
+        assertEquals(SessionCircuitBreaker.State.OPEN, breaker.getState());
+
+        Thread.sleep(5);
+
+        assertTrue(breaker.tryAcquire());
+        assertEquals(SessionCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+
+        breaker.onFailure(FAST);
+        assertEquals(SessionCircuitBreaker.State.OPEN, breaker.getState());
+
+        Thread.sleep(5);
+
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        breaker.onSuccess(FAST);
+        breaker.onSuccess(FAST);
+        assertEquals(SessionCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    /**
+     * Unit test to ensure that a breaker rebuilt with changed settings keeps an open circuit open.
+     */
+    public void testTakeOverKeepsOpenCircuit() {
+        SessionCircuitBreaker breaker = new SessionCircuitBreaker(2, 2, 50, 100, 1000, 60000, 2);
+        SessionCircuitBreaker same = new SessionCircuitBreaker(2, 2, 50, 100, 1000, 60000, 2);
+        SessionCircuitBreaker changed = new SessionCircuitBreaker(4, 2, 50, 100, 1000, 60000, 2);
+
+        assertTrue(same.hasSameSettings(breaker));
+        assertFalse(changed.hasSameSettings(breaker));
+
+        breaker.onFailure(FAST);
+        breaker.onFailure(FAST);
+        changed.takeOver(breaker);
+
+        assertEquals(SessionCircuitBreaker.State.OPEN, changed.getState());
+        assertFalse(changed.tryAcquire());
+    }
+}
@@ -0,0 +1,86 @@
+package uk.co.blackcell.web.session;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+
+/**
+ * Unit test for the Session Compressor component.
+ */
+public class SessionCompressorTest extends TestCase
+{
+    private static final int MAXIMUM = 1024 * 1024;
+
+    /**
+     * Create the test case
+     * @param testName name of the test case
+     */
+    public SessionCompressorTest(String testName ) {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite( SessionCompressorTest.class );
+    }
+
+    /**
+     * Unit test to ensure that what we compress, is what we decompress, including when the
+     * compressed data is read from within an enveloped value.
+     */
+    public void testCompressedDataIsDecompressed() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < 100; i++) {
+            builder.append("{\"user\":\"james\",\"basket\":[").append(i).append("]}");
+        }
+        final byte[] myAppData = builder.toString().getBytes(StandardCharsets.UTF_8);
+
+        SessionCompressor compressor = new SessionCompressor(true, 512, MAXIMUM, 1);
+
+        Optional<byte[]> compressed = compressor.compress(myAppData);
+        assertTrue(compressed.isPresent());
+        assertTrue(compressed.get().length < myAppData.length);
+
+        assertTrue(Arrays.equals(myAppData, compressor.decompress(compressed.get())));
+
+        byte[] enveloped = SessionEnvelope.wrap(SessionEnvelope.FLAG_COMPRESSED, compressed.get());
+        assertTrue(Arrays.equals(myAppData, compressor.decompress(enveloped,
+                SessionEnvelope.HEADER_LENGTH, enveloped.length - SessionEnvelope.HEADER_LENGTH)));
+    }
+
+    /**
+     * Unit test to ensure that small or incompressible data is left as-is.
+     */
+    public void testDataIsNotAlwaysCompressed() throws Exception {
+        final byte[] myAppData = "This is my app data".getBytes(StandardCharsets.UTF_8);
+
+        byte[] random = new byte[4096];
+        new Random(42).nextBytes(random);
+
+        assertFalse(new SessionCompressor(true, 512, MAXIMUM, 1).compress(myAppData).isPresent());
+        assertFalse(new SessionCompressor(true, 0, MAXIMUM, 1).compress(random).isPresent());
+        assertFalse(new SessionCompressor(false, 0, MAXIMUM, 1).compress(new byte[4096]).isPresent());
+    }
+
+    /**
+     * A stored length above the maximum is rejected as corrupt, before anything is allocated.
+     */
+    public void testOversizedLengthIsRejected() throws Exception {
+        byte[] hostile = { 0x7F, (byte)0xFF, (byte)0xFF, (byte)0xFF, 0x03, 0x00 };
+
+        try {
+            new SessionCompressor(true, 512, MAXIMUM, 1).decompress(hostile);
+            fail("A length above the maximum should be rejected");
+        } catch(DataFormatException ex) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package uk.co.blackcell.web.session;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Unit test for the Session Envelope component.
+ */
+public class SessionEnvelopeTest extends TestCase
+{
+    /**
+     * Create the test case
+     * @param testName name of the test case
+     */
+    public SessionEnvelopeTest(String testName ) {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite( SessionEnvelopeTest.class );
+    }
+
+    /**
+     * Unit test to ensure that a version added to an enveloped value can be read, and that
+     * removing it restores the original envelope, flags included.
+     */
+    public void testVersionIsAddedAndRemoved() {
+        byte[] enveloped = SessionEnvelope.wrap(SessionEnvelope.FLAG_COMPRESSED, "payload".getBytes(StandardCharsets.UTF_8));
+
+        byte[] versioned = SessionEnvelope.withVersion(enveloped, 42L);
+        assertTrue(SessionEnvelope.isVersioned(versioned));
+        assertTrue(SessionEnvelope.hasFlag(versioned, SessionEnvelope.FLAG_COMPRESSED));
+        assertEquals(42L, SessionEnvelope.getVersion(versioned));
+        assertEquals(42L, SessionEnvelope.getVersion(ByteBuffer.wrap(versioned)));
+
+        assertTrue(Arrays.equals(enveloped, SessionEnvelope.withoutVersion(versioned)));
+    }
+
+    /**
+     * Unit test to ensure that plain (un-enveloped) data can be versioned, and that values
+     * written without a version are at version zero.
+     */
+    public void testUnversionedValuesAreAtVersionZero() {
+        byte[] plain = "{\"user\":\"james\"}".getBytes(StandardCharsets.UTF_8);
+        assertEquals(0L, SessionEnvelope.getVersion(plain));
+        assertEquals(0L, SessionEnvelope.getVersion(SessionEnvelope.wrap(SessionEnvelope.FLAG_NONE, plain)));
+
+        byte[] versioned = SessionEnvelope.withVersion(plain, 1L);
+        assertEquals(1L, SessionEnvelope.getVersion(versioned));
+        assertTrue(Arrays.equals(plain, SessionEnvelope.unwrap(SessionEnvelope.withoutVersion(versioned))));
+    }
+}
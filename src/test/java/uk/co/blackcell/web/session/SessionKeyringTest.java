@@ -0,0 +1,172 @@
+package uk.co.blackcell.web.session;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import redis.clients.util.SafeEncoder;
+import uk.co.blackcell.web.session.exceptions.SessionTechnicalException;
+
+import javax.crypto.spec.IvParameterSpec;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Unit test for the rotation of session encryption keys. Sessions are held in the off-heap
+ * store, and encrypted with the keys of the packaged configuration, in which key 0 is current.
+ */
+public class SessionKeyringTest extends TestCase
+{
+    private static final byte[] KEY = "48576951235648967523156984256742".getBytes(StandardCharsets.UTF_8);
+
+    private static final IvParameterSpec VECTOR = new IvParameterSpec(new byte[] {
+            0x32, 0x43, 0x18, 0x0A, 0x07, 0x64, 0x75, 0x0B,
+            0x27, 0x65, 0x51, 0x72, 0x13, 0x0F, 0x39, 0x19
+    });
+
+    private static final byte[] APP_DATA = "This is my app data and I want to feel safe :-(".getBytes(StandardCharsets.UTF_8);
+
+    private final SessionStore store = OffHeapSessionStore.getInstance();
+
+    /**
+     * Create the test case
+     * @param testName name of the test case
+     */
+    public SessionKeyringTest(String testName ) {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite( SessionKeyringTest.class );
+    }
+
+    /**
+     * A session written with the fixed vector, before keys were recorded, is still read, and is
+     * written back with a random vector and the current key recorded.
+     */
+    public void testLegacyVectorIsRewrittenWithCurrentKey() throws Exception {
+        final String sessionID = UUID.randomUUID().toString();
+
+        store.writeWithTimeout(SafeEncoder.encode(sessionID),
+                SessionEnvelope.wrap(SessionEnvelope.FLAG_ENCRYPTED, new SessionCipher(KEY).encrypt(APP_DATA, VECTOR)));
+
+        ISessionFacade facade = new RedisSessionManagerEncryptedImpl(store);
+
+        long retiredReads = retiredKeyReads();
+        assertTrue(Arrays.equals(APP_DATA, facade.getBytes(sessionID)));
+        assertEquals(retiredReads + 1, retiredKeyReads());
+
+        facade.setBytes(sessionID, APP_DATA);
+
+        byte[] stored = stored(sessionID);
+        assertTrue(SessionEnvelope.isKeyed(stored));
+        assertEquals(SessionKeyring.getInstance().getCurrentKeyId(), SessionEnvelope.getKeyId(stored));
+
+        retiredReads = retiredKeyReads();
+        assertTrue(Arrays.equals(APP_DATA, facade.getBytes(sessionID)));
+        assertEquals(retiredReads, retiredKeyReads());
+
+        facade.invalidate(sessionID);
+    }
+
+    /**
+     * A session read with any key but the current one is marked stale, so that saving it again
+     * unchanged re-encrypts it with the current key rather than only refreshing its timeout.
+     */
+    public void testRetiredKeyReadIsReEncryptedOnNextWrite() throws Exception {
+        final String sessionID = UUID.randomUUID().toString();
+
+        store.writeWithTimeout(SafeEncoder.encode(sessionID),
+                SessionEnvelope.wrap(SessionEnvelope.FLAG_ENCRYPTED, new SessionCipher(KEY).encrypt(APP_DATA, VECTOR)));
+
+        ISessionFacade facade = new DirtyCheckingSessionFacade(new RedisSessionManagerEncryptedImpl(store), Optional.empty());
+
+        long writesAvoided = SessionFingerprints.getWritesAvoided();
+
+        assertTrue(Arrays.equals(APP_DATA, facade.getBytes(sessionID)));
+        facade.setBytes(sessionID, APP_DATA);
+
+        assertEquals(writesAvoided, SessionFingerprints.getWritesAvoided());
+        assertTrue(SessionEnvelope.isKeyed(stored(sessionID)));
+
+        // Once re-encrypted, an unchanged session need not be written again.
+        byte[] reEncrypted = stored(sessionID);
+
+        assertTrue(Arrays.equals(APP_DATA, facade.getBytes(sessionID)));
+        facade.setBytes(sessionID, APP_DATA);
+
+        assertEquals(writesAvoided + 1, SessionFingerprints.getWritesAvoided());
+        assertTrue(Arrays.equals(reEncrypted, stored(sessionID)));
+
+        facade.invalidate(sessionID);
+    }
+
+    /**
+     * A key kept after it is retired still decrypts the sessions written with it, which are no
+     * longer current; a key which has been removed decrypts nothing.
+     */
+    public void testRetiredKeyDecryptsUntilRemoved() throws Exception {
+        Map<Integer, String> keys = new HashMap<>();
+        keys.put(0, "48576951235648967523156984256742");
+        keys.put(1, "0123456789abcdef");
+
+        SessionKeyring before = new SessionKeyring(keys, 0);
+        SessionKeyring after = new SessionKeyring(keys, 1);
+
+        IvParameterSpec vector = SessionKeyring.nextVector();
+        byte[] stored = SessionEnvelope.wrap(SessionEnvelope.FLAG_ENCRYPTED, before.getCurrentKeyId(), vector.getIV(),
+                before.getCurrent().encrypt(APP_DATA, vector));
+
+        int keyId = SessionEnvelope.getKeyId(stored);
+        assertTrue(before.isCurrent(keyId));
+        assertFalse(after.isCurrent(keyId));
+
+        int offset = SessionEnvelope.HEADER_LENGTH + SessionEnvelope.KEY_ID_LENGTH + SessionCipher.VECTOR_LENGTH;
+        assertTrue(Arrays.equals(APP_DATA, after.get(keyId).decrypt(stored, offset, stored.length - offset, vector)));
+
+        keys.remove(0);
+        try {
+            new SessionKeyring(keys, 1).get(keyId);
+            fail("A key which has been removed should not be usable");
+        } catch(InvalidKeyException ex) {
+            // Expected.
+        }
+    }
+
+    /**
+     * A session recording a key which is not active is rejected, rather than decrypted with
+     * some other key.
+     */
+    public void testUnknownKeyIsRejected() throws Exception {
+        final String sessionID = UUID.randomUUID().toString();
+
+        IvParameterSpec vector = SessionKeyring.nextVector();
+        store.writeWithTimeout(SafeEncoder.encode(sessionID), SessionEnvelope.wrap(SessionEnvelope.FLAG_ENCRYPTED, 200,
+                vector.getIV(), new SessionCipher(KEY).encrypt(APP_DATA, vector)));
+
+        ISessionFacade facade = new RedisSessionManagerEncryptedImpl(store);
+        try {
+            facade.getBytes(sessionID);
+            fail("A session encrypted with an unknown key should not be readable");
+        } catch(SessionTechnicalException ex) {
+            assertTrue(ex.getCause() instanceof InvalidKeyException);
+        }
+
+        facade.invalidate(sessionID);
+    }
+
+    private byte[] stored(final String sessionID) {
+        return store.readAndTouch(SafeEncoder.encode(sessionID), false).get();
+    }
+
+    private static long retiredKeyReads() {
+        return SessionMetrics.getInstance().getCounters().getOrDefault(SessionMetrics.RETIRED_KEY_READS, 0L);
+    }
+}
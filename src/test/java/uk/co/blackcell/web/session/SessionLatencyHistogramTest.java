@@ -0,0 +1,59 @@
+package uk.co.blackcell.web.session;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the Session Latency Histogram component.
+ */
+public class SessionLatencyHistogramTest extends TestCase
+{
+    /**
+     * Create the test case
+     * @param testName name of the test case
+     */
+    public SessionLatencyHistogramTest(String testName ) {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite( SessionLatencyHistogramTest.class );
+    }
+
+    /**
+     * Unit test to ensure that recorded values are summarised, and percentiles are
+     * reported to within a factor of two.
+     */
+    public void testRecordedValuesAreSummarised() {
+        SessionLatencyHistogram histogram = new SessionLatencyHistogram();
+
+        for(int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(5050, histogram.getTotal());
+        assertEquals(100, histogram.getMaximum());
+        assertEquals(50.5, histogram.getMean(), 0.001);
+
+        long median = histogram.getPercentile(50);
+        assertTrue(median >= 50 && median < 100);
+
+        assertEquals(100, histogram.getPercentile(99));
+    }
+
+    /**
+     * Unit test to ensure that an empty histogram reports nothing.
+     */
+    public void testEmptyHistogramReportsZero() {
+        SessionLatencyHistogram histogram = new SessionLatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0.0, histogram.getMean(), 0.001);
+        assertEquals(0, histogram.getPercentile(99));
+    }
+}
@@ -37,13 +37,15 @@ public class SessionManagerTest extends TestCase
 
     /**
      * Unit test to ensure the a valid session identifier was generated. The session
-     * identifier is a 36-character unique identifier based on the UUID pattern.
+     * identifier is 128 random bits, as a 22-character URL-safe Base64 string.
      */
     public void testSessionIdentifierGenerated() {
         final String mySession = SessionManager.generateID();
 
         assertNotNull(mySession);
-        assertEquals(mySession.length(), 36);
+        assertEquals(mySession.length(), 22);
+        assertTrue(mySession.matches("[A-Za-z0-9_-]+"));
+        assertFalse(mySession.equals(SessionManager.generateID()));
     }
 
     /**